@@ -0,0 +1,75 @@
+// k6 load test comparing the platform-thread and virtual-thread execution modes.
+//
+//   SPRING_PROFILES_ACTIVE=production                 java -jar app.jar   # platform threads
+//   SPRING_PROFILES_ACTIVE=production,virtual-threads java -jar app.jar   # virtual threads
+//   k6 run -e BASE_URL=http://localhost:8080/api -e USERNAME=loadtest -e PASSWORD=secret123 loadtest/booking-load.js
+//
+// The user is registered if it does not exist yet; every VU reuses the token from setup().
+//
+// Compare http_req_duration percentiles, http_reqs throughput and the JVM's resident memory
+// between the two runs at the same VU count.
+import http from 'k6/http';
+import { check } from 'k6';
+
+const BASE_URL = __ENV.BASE_URL || 'http://localhost:8080/api';
+const USERNAME = __ENV.USERNAME || 'loadtest';
+const PASSWORD = __ENV.PASSWORD || 'secret123';
+const JSON_HEADERS = { 'Content-Type': 'application/json' };
+const DOCTORS = ['Dr. Adams', 'Dr. Baker', 'Dr. Clark', 'Dr. Davis', 'Dr. Evans'];
+
+export const options = {
+  scenarios: {
+    booking_peak: {
+      executor: 'ramping-vus',
+      startVUs: 0,
+      stages: [
+        { duration: '30s', target: 200 },
+        { duration: '1m', target: 1000 },
+        { duration: '1m', target: 1000 },
+        { duration: '15s', target: 0 },
+      ],
+    },
+  },
+  thresholds: {
+    http_req_failed: ['rate<0.01'],
+  },
+};
+
+export function setup() {
+  http.post(`${BASE_URL}/users/register`, JSON.stringify({
+    username: USERNAME,
+    email: `${USERNAME}@example.com`,
+    password: PASSWORD,
+    fullName: 'Load Test',
+  }), { headers: JSON_HEADERS });
+
+  const login = http.post(`${BASE_URL}/users/login`, JSON.stringify({ username: USERNAME, password: PASSWORD }),
+    { headers: JSON_HEADERS });
+  if (login.status !== 200) {
+    throw new Error(`login failed with ${login.status}`);
+  }
+  return { token: login.json('token'), userId: login.json('user.id') };
+}
+
+export default function ({ token, userId }) {
+  const auth = { headers: { Authorization: `Bearer ${token}` } };
+  const doctor = DOCTORS[Math.floor(Math.random() * DOCTORS.length)];
+
+  const listing = http.get(`${BASE_URL}/appointments?doctor=${encodeURIComponent(doctor)}&size=50`, auth);
+  check(listing, { 'listing ok': (r) => r.status === 200 });
+
+  const availability = http.get(`${BASE_URL}/availability?doctor=${encodeURIComponent(doctor)}`, auth);
+  check(availability, { 'availability ok': (r) => r.status === 200 });
+
+  // Random slot far enough ahead that most bookings succeed; 409 means the slot was taken
+  const start = new Date(Date.now() + (1 + Math.floor(Math.random() * 365)) * 86400000);
+  start.setUTCHours(8 + Math.floor(Math.random() * 12), Math.random() < 0.5 ? 0 : 30, 0, 0);
+  const booking = http.post(`${BASE_URL}/appointments`, JSON.stringify({
+    userId,
+    patientName: 'Load Test',
+    appointmentDate: start.toISOString().slice(0, 19),
+    doctorName: doctor,
+    department: 'General',
+  }), { headers: { ...JSON_HEADERS, ...auth.headers } });
+  check(booking, { 'booking accepted or slot taken': (r) => r.status === 201 || r.status === 409 });
+}
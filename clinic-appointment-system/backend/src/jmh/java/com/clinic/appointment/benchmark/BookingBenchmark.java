@@ -0,0 +1,115 @@
+package com.clinic.appointment.benchmark;
+
+import com.clinic.appointment.AppointmentApplication;
+import com.clinic.appointment.dto.AppointmentDTO;
+import com.clinic.appointment.dto.UserDTO;
+import com.clinic.appointment.exception.SlotUnavailableException;
+import com.clinic.appointment.service.AppointmentService;
+import com.clinic.appointment.service.UserService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * AppointmentService.createAppointment against an in-process H2 database, both for a
+ * free slot (conflict check, user lookup and insert) and for an already booked slot
+ * (conflict check only)
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BookingBenchmark {
+    
+    @Param({"1000", "20000"})
+    public int existingAppointments;
+    
+    private static final int DOCTORS = 50;
+    // Half-hour visits from 08:00 to 20:00, the default clinic hours
+    private static final int SLOTS_PER_DAY = 24;
+    
+    private ConfigurableApplicationContext context;
+    private AppointmentService appointmentService;
+    private Long userId;
+    private LocalDateTime firstDay;
+    private final AtomicLong nextFreeSlot = new AtomicLong();
+    
+    @Setup(Level.Trial)
+    public void startApplication() {
+        context = SpringApplication.run(AppointmentApplication.class, "--spring.profiles.active=benchmark");
+        appointmentService = context.getBean(AppointmentService.class);
+        
+        UserDTO user = new UserDTO(null, "benchmark", "benchmark@clinic.test", "benchmark-password",
+            "Benchmark Patient", null, null, "USER", true);
+        userId = context.getBean(UserService.class).createUser(user).getId();
+        
+        firstDay = LocalDate.now().plusDays(1).atTime(8, 0);
+        List<AppointmentDTO> batch = new ArrayList<>();
+        for (int i = 0; i < existingAppointments; i++) {
+            batch.add(appointment("Dr. Booked " + (i % DOCTORS), slot(firstDay, i / DOCTORS)));
+            if (batch.size() == 1000) {
+                appointmentService.createAppointments(batch);
+                batch.clear();
+            }
+        }
+        if (!batch.isEmpty()) {
+            appointmentService.createAppointments(batch);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void stopApplication() {
+        context.close();
+    }
+    
+    @Benchmark
+    public AppointmentDTO bookFreeSlot() {
+        LocalDateTime start = slot(firstDay.plusYears(1), nextFreeSlot.getAndIncrement());
+        return appointmentService.createAppointment(appointment("Dr. Free", start));
+    }
+    
+    @Benchmark
+    public boolean rejectConflictingSlot() {
+        try {
+            appointmentService.createAppointment(appointment("Dr. Booked 0", firstDay.plusMinutes(15)));
+            return false;
+        } catch (SlotUnavailableException e) {
+            return true;
+        }
+    }
+    
+    private static LocalDateTime slot(LocalDateTime firstSlot, long n) {
+        return firstSlot.plusDays(n / SLOTS_PER_DAY).plusMinutes(30 * (n % SLOTS_PER_DAY));
+    }
+    
+    private AppointmentDTO appointment(String doctorName, LocalDateTime start) {
+        AppointmentDTO dto = new AppointmentDTO();
+        dto.setUserId(userId);
+        dto.setPatientName("Benchmark Patient");
+        dto.setAppointmentDate(start);
+        dto.setDoctorName(doctorName);
+        dto.setDepartment("General");
+        return dto;
+    }
+}
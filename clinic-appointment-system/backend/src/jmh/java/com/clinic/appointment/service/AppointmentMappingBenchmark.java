@@ -0,0 +1,93 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.dto.AppointmentDTO;
+import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.model.Appointment.AppointmentStatus;
+import com.clinic.appointment.model.Department;
+import com.clinic.appointment.model.Doctor;
+import com.clinic.appointment.model.User;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity-to-DTO mapping and Jackson serialization of appointment lists, the CPU side
+ * of every listing response
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class AppointmentMappingBenchmark {
+    
+    @Param({"50", "1000", "10000"})
+    public int size;
+    
+    private ObjectMapper objectMapper;
+    private List<Appointment> appointments;
+    private List<AppointmentDTO> dtos;
+    
+    @Setup
+    public void createAppointments() {
+        // Same defaults as the ObjectMapper Spring Boot configures for the REST layer
+        objectMapper = Jackson2ObjectMapperBuilder.json().build();
+        
+        User user = new User();
+        user.setId(1L);
+        Department department = new Department();
+        department.setId(1);
+        department.setName("Cardiology");
+        Doctor doctor = new Doctor();
+        doctor.setId(1);
+        doctor.setName("Dr. Smith");
+        doctor.setDepartment(department);
+        LocalDateTime start = LocalDateTime.now().plusDays(1);
+        appointments = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            Appointment appointment = new Appointment();
+            appointment.setId((long) i);
+            appointment.setUser(user);
+            appointment.setPatientName("Patient " + i);
+            appointment.setPatientPhone("555-0100");
+            appointment.setAppointmentDate(start.plusMinutes(30L * i));
+            appointment.setDoctor(doctor);
+            appointment.setReason("Routine check-up");
+            appointment.setStatus(AppointmentStatus.SCHEDULED);
+            appointment.setCreatedAt(start);
+            appointment.setUpdatedAt(start);
+            appointments.add(appointment);
+        }
+        dtos = appointments.stream().map(AppointmentService::convertToDTO).toList();
+    }
+    
+    @Benchmark
+    public void convertToDTO(Blackhole blackhole) {
+        for (Appointment appointment : appointments) {
+            blackhole.consume(AppointmentService.convertToDTO(appointment));
+        }
+    }
+    
+    @Benchmark
+    public byte[] serializeList() throws JsonProcessingException {
+        return objectMapper.writeValueAsBytes(dtos);
+    }
+}
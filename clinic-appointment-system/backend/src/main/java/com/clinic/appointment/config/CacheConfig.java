@@ -0,0 +1,29 @@
+package com.clinic.appointment.config;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.cache.caffeine.CaffeineCacheManager;
+import org.springframework.cache.transaction.TransactionAwareCacheManagerProxy;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+@EnableCaching
+public class CacheConfig {
+    
+    public static final String USERS_BY_ID = "usersById";
+    public static final String USERS_BY_USERNAME = "usersByUsername";
+    
+    /**
+     * Bounded local caches for rarely-changing lookups. Puts and evictions are deferred
+     * until the surrounding transaction commits, so readers never re-cache stale rows.
+     */
+    @Bean
+    public CacheManager cacheManager(@Value("${clinic.cache.spec:maximumSize=10000,expireAfterWrite=10m}") String spec) {
+        CaffeineCacheManager cacheManager = new CaffeineCacheManager(USERS_BY_ID, USERS_BY_USERNAME);
+        cacheManager.setCaffeine(Caffeine.from(spec).recordStats());
+        return new TransactionAwareCacheManagerProxy(cacheManager);
+    }
+}
@@ -0,0 +1,82 @@
+package com.clinic.appointment.config;
+
+import com.clinic.appointment.datasource.ReadYourWritesTracker;
+import com.clinic.appointment.datasource.ReplicaRoutingDataSource;
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.metrics.micrometer.MicrometerMetricsTrackerFactory;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnExpression;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.context.properties.bind.Bindable;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.core.env.Environment;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Replaces the single auto-configured pool with a primary pool plus one pool per replica
+ * when clinic.datasource.replica-urls is set. Replica pools use the primary's credentials
+ * and spring.datasource.hikari.* settings, and hand out read-only connections.
+ */
+@Configuration
+@ConditionalOnExpression("!'${clinic.datasource.replica-urls:}'.isBlank()")
+@Slf4j
+public class ReplicaDataSourceConfig {
+    
+    // Not beans themselves, so closed here on shutdown
+    private final List<HikariDataSource> pools = new ArrayList<>();
+    
+    @Bean
+    public ReadYourWritesTracker readYourWritesTracker(
+            @Value("${clinic.datasource.read-your-writes-ms:5000}") long windowMillis) {
+        return new ReadYourWritesTracker(Duration.ofMillis(windowMillis));
+    }
+    
+    @Bean
+    @Primary
+    public DataSource dataSource(DataSourceProperties properties,
+                                 Environment environment,
+                                 MeterRegistry meterRegistry,
+                                 ReadYourWritesTracker readYourWritesTracker,
+                                 @Value("${clinic.datasource.replica-urls}") List<String> replicaUrls) {
+        HikariDataSource primary = pool(properties, environment, meterRegistry, "primary", properties.determineUrl());
+        List<DataSource> replicas = new ArrayList<>();
+        for (String url : replicaUrls) {
+            HikariDataSource replica = pool(properties, environment, meterRegistry, "replica-" + (replicas.size() + 1), url.strip());
+            replica.setReadOnly(true);
+            replicas.add(replica);
+        }
+        ReplicaRoutingDataSource routing = new ReplicaRoutingDataSource(primary, replicas, readYourWritesTracker, meterRegistry);
+        routing.afterPropertiesSet();
+        log.info("Routing read-only transactions to {} replica(s)", replicas.size());
+        return new LazyConnectionDataSourceProxy(routing);
+    }
+    
+    @PreDestroy
+    public void closePools() {
+        pools.forEach(HikariDataSource::close);
+    }
+    
+    private HikariDataSource pool(DataSourceProperties properties, Environment environment,
+                                  MeterRegistry meterRegistry, String name, String url) {
+        HikariDataSource pool = properties.initializeDataSourceBuilder()
+            .type(HikariDataSource.class)
+            .url(url)
+            .build();
+        Binder.get(environment).bind("spring.datasource.hikari", Bindable.ofInstance(pool));
+        pool.setPoolName(name);
+        pool.setMetricsTrackerFactory(new MicrometerMetricsTrackerFactory(meterRegistry));
+        pools.add(pool);
+        return pool;
+    }
+}
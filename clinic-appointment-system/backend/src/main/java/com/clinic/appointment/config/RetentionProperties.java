@@ -0,0 +1,28 @@
+package com.clinic.appointment.config;
+
+import com.clinic.appointment.model.Appointment.AppointmentStatus;
+import lombok.Data;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Retention of finished appointments, e.g. clinic.retention.days.CANCELLED=90.
+ * Statuses without an entry are kept forever.
+ */
+@Component
+@ConfigurationProperties(prefix = "clinic.retention")
+@Data
+public class RetentionProperties {
+    
+    private Map<AppointmentStatus, Integer> days = new EnumMap<>(Map.of(AppointmentStatus.CANCELLED, 90));
+    
+    /**
+     * Write purged rows to gzip-compressed NDJSON files before they are deleted
+     */
+    private boolean archiveEnabled = false;
+    
+    private String archiveDirectory = "archive";
+}
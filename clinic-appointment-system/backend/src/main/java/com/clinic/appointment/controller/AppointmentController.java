@@ -1,16 +1,37 @@
 package com.clinic.appointment.controller;
 
+import com.clinic.appointment.dto.AppointmentBatchDTO;
+import com.clinic.appointment.dto.AppointmentChangesDTO;
 import com.clinic.appointment.dto.AppointmentDTO;
+import com.clinic.appointment.dto.AppointmentPageDTO;
+import com.clinic.appointment.dto.AppointmentSearchCriteria;
+import com.clinic.appointment.event.AppointmentEventBus;
+import com.clinic.appointment.exception.BookingBusyException;
+import com.clinic.appointment.exception.SlotUnavailableException;
+import com.clinic.appointment.exception.SyncTokenExpiredException;
 import com.clinic.appointment.model.Appointment.AppointmentStatus;
+import com.clinic.appointment.security.AuthenticatedUser;
+import com.clinic.appointment.service.AppointmentExportService;
+import com.clinic.appointment.service.AppointmentExportService.ExportFormat;
 import com.clinic.appointment.service.AppointmentService;
+import com.clinic.appointment.service.AppointmentSyncService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.time.LocalDateTime;
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/appointments")
@@ -19,12 +40,33 @@ import java.util.Map;
 public class AppointmentController {
     
     private final AppointmentService appointmentService;
+    private final AppointmentExportService appointmentExportService;
+    private final AppointmentSyncService appointmentSyncService;
+    private final AppointmentEventBus eventBus;
     
     @PostMapping
     public ResponseEntity<?> createAppointment(@Valid @RequestBody AppointmentDTO appointmentDTO) {
         try {
             AppointmentDTO createdAppointment = appointmentService.createAppointment(appointmentDTO);
             return ResponseEntity.status(HttpStatus.CREATED).body(createdAppointment);
+        } catch (SlotUnavailableException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (BookingBusyException e) {
+            return busy(e);
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    @PostMapping("/batch")
+    public ResponseEntity<?> createAppointments(@Valid @RequestBody AppointmentBatchDTO batchDTO) {
+        try {
+            List<AppointmentDTO> createdAppointments = appointmentService.createAppointments(batchDTO.getAppointments());
+            return ResponseEntity.status(HttpStatus.CREATED).body(createdAppointments);
+        } catch (SlotUnavailableException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (BookingBusyException e) {
+            return busy(e);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -38,23 +80,124 @@ public class AppointmentController {
     }
     
     @GetMapping
-    public ResponseEntity<List<AppointmentDTO>> getAllAppointments() {
-        return ResponseEntity.ok(appointmentService.getAllAppointments());
+    public ResponseEntity<?> getAllAppointments(
+            @RequestParam(required = false) String doctor,
+            @RequestParam(required = false) String department,
+            @RequestParam(required = false) AppointmentStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) Integer size) {
+        try {
+            AppointmentSearchCriteria criteria = new AppointmentSearchCriteria();
+            criteria.setDoctorName(doctor);
+            criteria.setDepartment(department);
+            criteria.setStatus(status);
+            criteria.setFrom(from);
+            criteria.setTo(to);
+            return ResponseEntity.ok(appointmentService.searchAppointments(criteria, cursor, size));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
     
+    /**
+     * Streams every matching appointment as NDJSON or CSV without paging; patients only
+     * export their own. Bad parameters are left to GlobalExceptionHandler: the streaming
+     * return handler only recognises a ResponseEntity whose body type is declared as
+     * StreamingResponseBody.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<StreamingResponseBody> exportAppointments(
+            @AuthenticationPrincipal AuthenticatedUser caller,
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(required = false) Long userId,
+            @RequestParam(required = false) String doctor,
+            @RequestParam(required = false) String department,
+            @RequestParam(required = false) AppointmentStatus status,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) LocalDateTime to) {
+        ExportFormat exportFormat = ExportFormat.from(format);
+        if (from != null && to != null && !to.isAfter(from)) {
+            throw new RuntimeException("End date must be after start date");
+        }
+        AppointmentSearchCriteria criteria = new AppointmentSearchCriteria();
+        criteria.setUserId(caller.readableUserId(userId));
+        criteria.setDoctorName(doctor);
+        criteria.setDepartment(department);
+        criteria.setStatus(status);
+        criteria.setFrom(from);
+        criteria.setTo(to);
+        StreamingResponseBody body = out -> appointmentExportService.export(criteria, exportFormat, out);
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(exportFormat.getContentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION,
+                        "attachment; filename=\"appointments." + exportFormat.getExtension() + "\"")
+                .body(body);
+    }
+    
+    /**
+     * Server-Sent Events for committed bookings, updates, cancellations and NO_SHOW
+     * transitions, optionally narrowed to one user and/or one doctor. Patients only receive
+     * their own. EventSource cannot set headers, so this endpoint also takes the token as an
+     * access_token query parameter.
+     */
+    @GetMapping("/stream")
+    public SseEmitter streamChanges(@AuthenticationPrincipal AuthenticatedUser caller,
+                                    @RequestParam(required = false) Long userId,
+                                    @RequestParam(required = false) String doctor) {
+        return eventBus.subscribe(caller.readableUserId(userId), appointmentService.findDoctorFilterId(doctor));
+    }
+    
+    /**
+     * Appointments changed since the given sync token, with the token to pass next time.
+     * Without since, returns only a token for the present. 410 when the token is older than
+     * the retained change log. Patients only see changes to their own appointments.
+     */
+    @GetMapping("/changes")
+    public ResponseEntity<?> getChanges(@AuthenticationPrincipal AuthenticatedUser caller,
+                                        @RequestParam(required = false) String since,
+                                        @RequestParam(required = false) Long userId,
+                                        @RequestParam(required = false) String doctor,
+                                        @RequestParam(required = false) Integer size) {
+        // Outside the try, so a foreign userId is answered by GlobalExceptionHandler with 403
+        Long readableUserId = caller.readableUserId(userId);
+        try {
+            AppointmentChangesDTO changes = appointmentSyncService.changesSince(since, readableUserId, doctor, size);
+            return ResponseEntity.ok(changes);
+        } catch (SyncTokenExpiredException e) {
+            return ResponseEntity.status(HttpStatus.GONE).body(Map.of("error", e.getMessage()));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+    
+    /**
+     * Answers 304 without reading the page when If-None-Match carries the user's current data version
+     */
     @GetMapping("/user/{userId}")
-    public ResponseEntity<?> getAppointmentsByUser(@PathVariable Long userId) {
+    public ResponseEntity<?> getAppointmentsByUser(@PathVariable Long userId,
+                                                   @RequestParam(required = false) String cursor,
+                                                   @RequestParam(required = false) Integer size,
+                                                   ServletWebRequest request) {
         try {
-            List<AppointmentDTO> appointments = appointmentService.getAppointmentsByUser(userId);
-            return ResponseEntity.ok(appointments);
+            Optional<AppointmentPageDTO> appointments = appointmentService.getAppointmentsByUser(userId, cursor, size,
+                    ConditionalGet.notModified(request));
+            return appointments.<ResponseEntity<?>>map(ResponseEntity::ok).orElse(null);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
     
     @GetMapping("/status/{status}")
-    public ResponseEntity<List<AppointmentDTO>> getAppointmentsByStatus(@PathVariable AppointmentStatus status) {
-        return ResponseEntity.ok(appointmentService.getAppointmentsByStatus(status));
+    public ResponseEntity<?> getAppointmentsByStatus(@PathVariable AppointmentStatus status,
+                                                     @RequestParam(required = false) String cursor,
+                                                     @RequestParam(required = false) Integer size) {
+        try {
+            return ResponseEntity.ok(appointmentService.getAppointmentsByStatus(status, cursor, size));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
     }
     
     @PutMapping("/{id}")
@@ -63,6 +206,10 @@ public class AppointmentController {
         try {
             AppointmentDTO updatedAppointment = appointmentService.updateAppointment(id, appointmentDTO);
             return ResponseEntity.ok(updatedAppointment);
+        } catch (SlotUnavailableException e) {
+            return ResponseEntity.status(HttpStatus.CONFLICT).body(Map.of("error", e.getMessage()));
+        } catch (BookingBusyException e) {
+            return busy(e);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -73,6 +220,8 @@ public class AppointmentController {
         try {
             appointmentService.cancelAppointment(id);
             return ResponseEntity.ok(Map.of("message", "Appointment cancelled successfully"));
+        } catch (BookingBusyException e) {
+            return busy(e);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -83,8 +232,16 @@ public class AppointmentController {
         try {
             appointmentService.deleteAppointment(id);
             return ResponseEntity.ok(Map.of("message", "Appointment deleted successfully"));
+        } catch (BookingBusyException e) {
+            return busy(e);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
+    
+    private ResponseEntity<?> busy(BookingBusyException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", e.getMessage()));
+    }
 }
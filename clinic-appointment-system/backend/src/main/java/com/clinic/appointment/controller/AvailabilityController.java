@@ -0,0 +1,33 @@
+package com.clinic.appointment.controller;
+
+import com.clinic.appointment.service.AvailabilityService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+
+import java.time.LocalDate;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/api/availability")
+@RequiredArgsConstructor
+@CrossOrigin(origins = "*")
+public class AvailabilityController {
+    
+    private final AvailabilityService availabilityService;
+    
+    @GetMapping
+    public ResponseEntity<?> getAvailability(
+            @RequestParam(required = false) String doctor,
+            @RequestParam(required = false) String department,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate from,
+            @RequestParam(required = false) @DateTimeFormat(iso = DateTimeFormat.ISO.DATE) LocalDate to,
+            @RequestParam(required = false) Integer duration) {
+        try {
+            return ResponseEntity.ok(availabilityService.findAvailability(doctor, department, from, to, duration));
+        } catch (RuntimeException e) {
+            return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package com.clinic.appointment.controller;
+
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.context.request.ServletWebRequest;
+
+import java.util.function.LongPredicate;
+
+/**
+ * ETags for per-user reads, taken from the user's data version. Weak, because the body
+ * may be gzip-encoded on the way out.
+ */
+final class ConditionalGet {
+    
+    // Browsers keep the response but revalidate before each use; shared caches never store it
+    private static final String CACHE_CONTROL = CacheControl.noCache().cachePrivate().getHeaderValue();
+    
+    private ConditionalGet() {
+    }
+    
+    /**
+     * Tags the response with the version it is handed and tells whether the client's
+     * If-None-Match already matches it, in which case the response has become a 304
+     */
+    static LongPredicate notModified(ServletWebRequest request) {
+        return version -> {
+            if (request.getResponse() != null) {
+                request.getResponse().setHeader(HttpHeaders.CACHE_CONTROL, CACHE_CONTROL);
+            }
+            return request.checkNotModified("W/\"" + version + "\"");
+        };
+    }
+}
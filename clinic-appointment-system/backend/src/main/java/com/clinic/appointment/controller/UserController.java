@@ -2,15 +2,22 @@ package com.clinic.appointment.controller;
 
 import com.clinic.appointment.dto.UserDTO;
 import com.clinic.appointment.dto.UserUpdateDTO;
+import com.clinic.appointment.exception.PasswordHashingBusyException;
+import com.clinic.appointment.security.AuthenticatedUser;
+import com.clinic.appointment.security.JwtService;
 import com.clinic.appointment.service.UserService;
 import jakarta.validation.Valid;
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.ServletWebRequest;
 
 import java.util.List;
 import java.util.Map;
+import java.util.Optional;
 
 @RestController
 @RequestMapping("/api/users")
@@ -19,12 +26,15 @@ import java.util.Map;
 public class UserController {
     
     private final UserService userService;
+    private final JwtService jwtService;
     
     @PostMapping("/register")
     public ResponseEntity<?> registerUser(@Valid @RequestBody UserDTO userDTO) {
         try {
             UserDTO createdUser = userService.createUser(userDTO);
             return ResponseEntity.status(HttpStatus.CREATED).body(createdUser);
+        } catch (PasswordHashingBusyException e) {
+            return busy(e);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -36,23 +46,42 @@ public class UserController {
             String username = credentials.get("username");
             String password = credentials.get("password");
             
-            return userService.getUserByUsername(username)
-                    .map(user -> ResponseEntity.ok(Map.of(
+            return userService.authenticate(username, password)
+                    .<ResponseEntity<?>>map(user -> ResponseEntity.ok(Map.of(
                         "message", "Login successful",
-                        "user", user
+                        "user", user,
+                        "token", jwtService.issueToken(user),
+                        "tokenType", "Bearer",
+                        "expiresIn", jwtService.getExpirationMillis() / 1000
                     )))
                     .orElse(ResponseEntity.status(HttpStatus.UNAUTHORIZED)
                         .body(Map.of("error", "Invalid credentials")));
+        } catch (PasswordHashingBusyException e) {
+            return busy(e);
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR)
                     .body(Map.of("error", "Login failed"));
         }
     }
     
+    /**
+     * Identity of the caller, straight from the token claims
+     */
+    @GetMapping("/me")
+    public ResponseEntity<AuthenticatedUser> currentUser(@AuthenticationPrincipal AuthenticatedUser user) {
+        return ResponseEntity.ok(user);
+    }
+    
+    /**
+     * Answers 304 without reading the profile when If-None-Match carries the user's current data version
+     */
     @GetMapping("/{id}")
-    public ResponseEntity<?> getUserById(@PathVariable Long id) {
-        return userService.getUserById(id)
-                .map(ResponseEntity::ok)
+    public ResponseEntity<?> getUserById(@PathVariable Long id, ServletWebRequest request) {
+        Optional<UserDTO> user = userService.getUserByIdIfModified(id, ConditionalGet.notModified(request));
+        if (request.isNotModified()) {
+            return null;
+        }
+        return user.<ResponseEntity<?>>map(ResponseEntity::ok)
                 .orElse(ResponseEntity.notFound().build());
     }
     
@@ -74,6 +103,8 @@ public class UserController {
         try {
             UserDTO updatedUser = userService.updateUser(id, updateDTO);
             return ResponseEntity.ok(updatedUser);
+        } catch (PasswordHashingBusyException e) {
+            return busy(e);
         } catch (RuntimeException e) {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
@@ -88,4 +119,10 @@ public class UserController {
             return ResponseEntity.badRequest().body(Map.of("error", e.getMessage()));
         }
     }
+    
+    private ResponseEntity<?> busy(PasswordHashingBusyException e) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(Map.of("error", e.getMessage()));
+    }
 }
@@ -0,0 +1,74 @@
+package com.clinic.appointment.datasource;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sends connections for read-only transactions to the replicas, round robin, and
+ * everything else to the primary: read-write transactions, work outside a transaction
+ * (Flyway, JdbcTemplate jobs), and reads by a user who has just written.
+ *
+ * The routing decision reads the transaction's read-only flag, which Spring only
+ * publishes after the transaction has begun. This DataSource must therefore sit behind
+ * a LazyConnectionDataSourceProxy, so the physical connection is not fetched until
+ * the first statement.
+ */
+public class ReplicaRoutingDataSource extends AbstractRoutingDataSource {
+    
+    private static final String PRIMARY = "primary";
+    
+    private final List<String> replicaKeys;
+    private final ReadYourWritesTracker readYourWritesTracker;
+    private final AtomicInteger nextReplica = new AtomicInteger();
+    private final Counter replicaReads;
+    private final Counter stickyReads;
+    
+    public ReplicaRoutingDataSource(DataSource primary, List<DataSource> replicas,
+                                    ReadYourWritesTracker readYourWritesTracker, MeterRegistry meterRegistry) {
+        Map<Object, Object> targets = new HashMap<>();
+        targets.put(PRIMARY, primary);
+        this.replicaKeys = new ArrayList<>();
+        for (int i = 0; i < replicas.size(); i++) {
+            String key = "replica-" + (i + 1);
+            targets.put(key, replicas.get(i));
+            replicaKeys.add(key);
+        }
+        setTargetDataSources(targets);
+        setDefaultTargetDataSource(primary);
+        this.readYourWritesTracker = readYourWritesTracker;
+        this.replicaReads = Counter.builder("clinic.datasource.reads")
+            .tag("target", "replica")
+            .description("Read-only transactions routed to a replica")
+            .register(meterRegistry);
+        this.stickyReads = Counter.builder("clinic.datasource.reads")
+            .tag("target", "primary")
+            .description("Read-only transactions kept on the primary after the user's own write")
+            .register(meterRegistry);
+    }
+    
+    @Override
+    protected Object determineCurrentLookupKey() {
+        if (!TransactionSynchronizationManager.isActualTransactionActive()) {
+            return PRIMARY;
+        }
+        if (!TransactionSynchronizationManager.isCurrentTransactionReadOnly()) {
+            readYourWritesTracker.recordWriteOnCommit();
+            return PRIMARY;
+        }
+        if (readYourWritesTracker.currentUserWroteRecently()) {
+            stickyReads.increment();
+            return PRIMARY;
+        }
+        replicaReads.increment();
+        return replicaKeys.get(Math.floorMod(nextReplica.getAndIncrement(), replicaKeys.size()));
+    }
+}
@@ -0,0 +1,20 @@
+package com.clinic.appointment.dto;
+
+import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppointmentBatchDTO {
+    
+    @NotEmpty(message = "At least one appointment is required")
+    @Size(max = 1000, message = "A batch may contain at most 1000 appointments")
+    private List<@Valid AppointmentDTO> appointments;
+}
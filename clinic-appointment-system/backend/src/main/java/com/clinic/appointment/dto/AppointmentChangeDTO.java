@@ -0,0 +1,21 @@
+package com.clinic.appointment.dto;
+
+import com.clinic.appointment.event.AppointmentEvent;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppointmentChangeDTO {
+    
+    private AppointmentEvent.Type type;
+    
+    private Long appointmentId;
+    
+    /**
+     * Current state of the appointment, or null when it has been deleted
+     */
+    private AppointmentDTO appointment;
+}
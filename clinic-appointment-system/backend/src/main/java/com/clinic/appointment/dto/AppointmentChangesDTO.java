@@ -0,0 +1,22 @@
+package com.clinic.appointment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppointmentChangesDTO {
+    
+    private List<AppointmentChangeDTO> changes;
+    
+    /**
+     * Opaque token to pass back as {@code since}; always present, also when there is nothing new
+     */
+    private String nextToken;
+    
+    private boolean hasMore;
+}
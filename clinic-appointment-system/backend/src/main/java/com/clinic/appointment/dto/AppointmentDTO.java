@@ -2,6 +2,8 @@ package com.clinic.appointment.dto;
 
 import com.clinic.appointment.model.Appointment.AppointmentStatus;
 import jakarta.validation.constraints.Future;
+import jakarta.validation.constraints.Max;
+import jakarta.validation.constraints.Min;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
@@ -28,6 +30,10 @@ public class AppointmentDTO {
     @Future(message = "Appointment date must be in the future")
     private LocalDateTime appointmentDate;
     
+    @Min(value = 5, message = "Duration must be at least 5 minutes")
+    @Max(value = 480, message = "Duration must be at most 480 minutes")
+    private Integer durationMinutes;
+    
     @NotBlank(message = "Doctor name is required")
     private String doctorName;
     
@@ -0,0 +1,22 @@
+package com.clinic.appointment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppointmentPageDTO {
+    
+    private List<AppointmentDTO> content;
+    
+    /**
+     * Opaque cursor to pass back as {@code cursor} for the next page, or null on the last page
+     */
+    private String nextCursor;
+    
+    private boolean hasMore;
+}
@@ -0,0 +1,29 @@
+package com.clinic.appointment.dto;
+
+import com.clinic.appointment.model.Appointment.AppointmentStatus;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDateTime;
+
+/**
+ * Combinable filters for appointment listings. Null fields are not applied;
+ * {@code from} is inclusive and {@code to} is exclusive.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppointmentSearchCriteria {
+    
+    private Long userId;
+    private String doctorName;
+    private String department;
+    // Ids of the named doctor/department, filled in by DoctorDirectory.resolveFilterIds; the queries filter on these
+    private Integer doctorId;
+    private Integer departmentId;
+    private AppointmentStatus status;
+    private LocalDateTime from;
+    private LocalDateTime to;
+    private boolean descending;
+}
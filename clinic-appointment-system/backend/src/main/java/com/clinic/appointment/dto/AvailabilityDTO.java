@@ -0,0 +1,20 @@
+package com.clinic.appointment.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AvailabilityDTO {
+    
+    private String doctorName;
+    private String department;
+    private LocalDate date;
+    private List<LocalTime> freeSlots;
+}
@@ -31,4 +31,12 @@ public class UserDTO {
     private String address;
     private String role;
     private Boolean active;
+    
+    /**
+     * Projection constructor used by UserRepository queries; never carries the password
+     */
+    public UserDTO(Long id, String username, String email, String fullName,
+                   String phoneNumber, String address, String role, Boolean active) {
+        this(id, username, email, null, fullName, phoneNumber, address, role, active);
+    }
 }
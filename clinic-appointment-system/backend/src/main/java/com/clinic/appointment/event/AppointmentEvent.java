@@ -0,0 +1,28 @@
+package com.clinic.appointment.event;
+
+import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.model.Appointment.AppointmentStatus;
+
+import java.time.LocalDateTime;
+
+/**
+ * A committed change to one appointment, as pushed to open streams. It names the change
+ * rather than carrying the appointment; screens reload what they show.
+ */
+public record AppointmentEvent(Type type, Long appointmentId, Long userId, Integer doctorId,
+                               LocalDateTime appointmentDate, AppointmentStatus status) {
+    
+    public enum Type {
+        CREATED,
+        UPDATED,
+        DELETED
+    }
+    
+    /**
+     * Reads only ids from the user and doctor associations, so lazy proxies stay uninitialized
+     */
+    public static AppointmentEvent of(Type type, Appointment appointment) {
+        return new AppointmentEvent(type, appointment.getId(), appointment.getUser().getId(),
+            appointment.getDoctor().getId(), appointment.getAppointmentDate(), appointment.getStatus());
+    }
+}
@@ -0,0 +1,176 @@
+package com.clinic.appointment.event;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter.SseEventBuilder;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Fans committed appointment changes out to the Server-Sent Event streams open on this node.
+ * Publishing only offers the event to each matching subscriber's bounded buffer and never
+ * waits on a socket. Buffers are drained on a small pool of platform threads, at most one
+ * thread per buffer at a time; emitters write under a monitor, which would pin the carrier
+ * of a virtual thread for as long as a socket blocks. A client that reads slowly holds up
+ * at most one dispatch thread, and once its buffer is full it is disconnected and its
+ * EventSource reconnects to a fresh stream.
+ */
+@Component
+@Slf4j
+public class AppointmentEventBus {
+    
+    private static final String EVENT_NAME = "appointment";
+    
+    private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+    private final List<Consumer<AppointmentEvent>> listeners = new CopyOnWriteArrayList<>();
+    private final ExecutorService dispatcher;
+    private final int bufferSize;
+    private final long timeoutMillis;
+    private final Counter published;
+    private final Counter evicted;
+    
+    public AppointmentEventBus(MeterRegistry meterRegistry,
+                               @Value("${clinic.events.buffer-size:64}") int bufferSize,
+                               @Value("${clinic.events.timeout-ms:1800000}") long timeoutMillis,
+                               @Value("${clinic.events.dispatch-threads:4}") int dispatchThreads) {
+        this.dispatcher = Executors.newFixedThreadPool(dispatchThreads,
+            Thread.ofPlatform().name("appointment-events-", 0).daemon().factory());
+        this.bufferSize = bufferSize;
+        this.timeoutMillis = timeoutMillis;
+        this.published = Counter.builder("clinic.events.published")
+            .description("Appointment changes published to open streams")
+            .register(meterRegistry);
+        this.evicted = Counter.builder("clinic.events.evicted")
+            .description("Streams closed because the client fell a full buffer behind")
+            .register(meterRegistry);
+        Gauge.builder("clinic.events.subscribers", subscribers, Set::size)
+            .description("Open appointment event streams")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Opens a stream of the changes to one user's appointments, one doctor's, or, with
+     * neither given, all of them. Callers decide who may see which.
+     */
+    public SseEmitter subscribe(Long userId, Integer doctorId) {
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(userId, doctorId, emitter, new ArrayBlockingQueue<>(bufferSize));
+        emitter.onCompletion(() -> subscribers.remove(subscriber));
+        emitter.onTimeout(() -> subscribers.remove(subscriber));
+        emitter.onError(error -> subscribers.remove(subscriber));
+        subscribers.add(subscriber);
+        // Lets proxies pass the response headers through before the first change arrives
+        enqueue(subscriber, SseEmitter.event().comment("connected"));
+        return emitter;
+    }
+    
+    /**
+     * Registers an in-process listener. Listeners run on the publishing thread, after the
+     * change has committed, so they must return quickly.
+     */
+    public void addListener(Consumer<AppointmentEvent> listener) {
+        listeners.add(listener);
+    }
+    
+    public void publish(AppointmentEvent event) {
+        published.increment();
+        for (Consumer<AppointmentEvent> listener : listeners) {
+            try {
+                listener.accept(event);
+            } catch (RuntimeException e) {
+                log.warn("Appointment event listener failed for appointment {}", event.appointmentId(), e);
+            }
+        }
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.accepts(event)) {
+                enqueue(subscriber, SseEmitter.event().name(EVENT_NAME).data(event));
+            }
+        }
+    }
+    
+    public void publishAll(Collection<AppointmentEvent> events) {
+        events.forEach(this::publish);
+    }
+    
+    /**
+     * Keeps idle connections open through proxies and finds clients that went away
+     * without closing their connection
+     */
+    @Scheduled(fixedDelayString = "${clinic.events.heartbeat-ms:15000}")
+    public void heartbeat() {
+        for (Subscriber subscriber : subscribers) {
+            enqueue(subscriber, SseEmitter.event().comment("heartbeat"));
+        }
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        subscribers.forEach(subscriber -> subscriber.emitter().complete());
+        subscribers.clear();
+        dispatcher.shutdownNow();
+    }
+    
+    private void enqueue(Subscriber subscriber, SseEventBuilder event) {
+        if (!subscriber.buffer().offer(event)) {
+            if (subscribers.remove(subscriber)) {
+                evicted.increment();
+                log.debug("Closing appointment stream for user {} / doctor {}: client fell behind",
+                    subscriber.userId(), subscriber.doctorId());
+                // complete() waits for a send in progress, which may be stuck on this very client
+                dispatcher.execute(subscriber.emitter()::complete);
+            }
+            return;
+        }
+        if (subscriber.draining().compareAndSet(false, true)) {
+            dispatcher.execute(() -> drain(subscriber));
+        }
+    }
+    
+    private void drain(Subscriber subscriber) {
+        do {
+            try {
+                SseEventBuilder event;
+                while ((event = subscriber.buffer().poll()) != null) {
+                    subscriber.emitter().send(event);
+                }
+            } catch (IOException | IllegalStateException e) {
+                // Disconnected or already completed; the emitter callbacks may not fire for a dead socket
+                subscribers.remove(subscriber);
+                subscriber.buffer().clear();
+                return;
+            }
+            subscriber.draining().set(false);
+        } while (!subscriber.buffer().isEmpty() && subscriber.draining().compareAndSet(false, true));
+    }
+    
+    private record Subscriber(Long userId, Integer doctorId, SseEmitter emitter,
+                              BlockingQueue<SseEventBuilder> buffer, AtomicBoolean draining) {
+        
+        Subscriber(Long userId, Integer doctorId, SseEmitter emitter, BlockingQueue<SseEventBuilder> buffer) {
+            this(userId, doctorId, emitter, buffer, new AtomicBoolean());
+        }
+        
+        boolean accepts(AppointmentEvent event) {
+            return (userId == null || userId.equals(event.userId()))
+                && (doctorId == null || doctorId.equals(event.doctorId()));
+        }
+    }
+}
@@ -0,0 +1,8 @@
+package com.clinic.appointment.exception;
+
+public class BookingBusyException extends RuntimeException {
+    
+    public BookingBusyException(String message) {
+        super(message);
+    }
+}
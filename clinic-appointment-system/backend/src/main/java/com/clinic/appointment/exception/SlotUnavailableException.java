@@ -0,0 +1,8 @@
+package com.clinic.appointment.exception;
+
+public class SlotUnavailableException extends RuntimeException {
+    
+    public SlotUnavailableException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,8 @@
+package com.clinic.appointment.exception;
+
+public class SyncTokenExpiredException extends RuntimeException {
+    
+    public SyncTokenExpiredException(String message) {
+        super(message);
+    }
+}
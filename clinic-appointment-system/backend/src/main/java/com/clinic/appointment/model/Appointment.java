@@ -7,22 +7,29 @@ import jakarta.validation.constraints.NotNull;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.LocalDateTime;
 
+// Range-partitioned by month of appointment_date in the database (see V4 migration)
 @Entity
 @Table(name = "appointments", indexes = {
-    @Index(name = "idx_user_id", columnList = "user_id"),
-    @Index(name = "idx_appointment_date", columnList = "appointmentDate"),
-    @Index(name = "idx_status", columnList = "status")
+    @Index(name = "idx_appointments_user_date", columnList = "user_id, appointmentDate, id"),
+    @Index(name = "idx_appointments_status_date", columnList = "status, appointmentDate, id"),
+    @Index(name = "idx_appointments_doctor_date", columnList = "doctor_id, appointmentDate, id"),
+    @Index(name = "idx_appointments_date_id", columnList = "appointmentDate, id"),
+    @Index(name = "idx_appointments_status_updated_at", columnList = "status, updatedAt")
 })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
 public class Appointment {
     
+    public static final int DEFAULT_DURATION_MINUTES = 30;
+    
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "appointments_seq")
+    @SequenceGenerator(name = "appointments_seq", sequenceName = "appointments_id_seq", allocationSize = 50)
     private Long id;
     
     @ManyToOne(fetch = FetchType.LAZY)
@@ -42,12 +49,15 @@ public class Appointment {
     @Column(nullable = false)
     private LocalDateTime appointmentDate;
     
-    @NotBlank(message = "Doctor name is required")
-    @Column(nullable = false, length = 100)
-    private String doctorName;
+    @NotNull(message = "Duration is required")
+    @Column(nullable = false)
+    @ColumnDefault("30")
+    private Integer durationMinutes = DEFAULT_DURATION_MINUTES;
     
-    @Column(length = 50)
-    private String department;
+    @ManyToOne(fetch = FetchType.LAZY)
+    @JoinColumn(name = "doctor_id", nullable = false)
+    @NotNull(message = "Doctor is required")
+    private Doctor doctor;
     
     @Column(length = 500)
     private String reason;
@@ -65,6 +75,14 @@ public class Appointment {
     @Column(nullable = false)
     private LocalDateTime updatedAt;
     
+    public LocalDateTime getAppointmentEnd() {
+        return appointmentDate.plusMinutes(durationMinutes);
+    }
+    
+    public boolean isActive() {
+        return status == AppointmentStatus.SCHEDULED || status == AppointmentStatus.CONFIRMED;
+    }
+    
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
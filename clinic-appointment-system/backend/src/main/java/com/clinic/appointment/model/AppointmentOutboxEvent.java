@@ -0,0 +1,91 @@
+package com.clinic.appointment.model;
+
+import com.clinic.appointment.event.AppointmentEvent;
+import com.clinic.appointment.model.Appointment.AppointmentStatus;
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.hibernate.annotations.ColumnDefault;
+
+import java.time.LocalDateTime;
+
+/**
+ * An appointment change waiting in the outbox for OutboxRelay (see V8 migration)
+ */
+@Entity
+@Table(name = "appointment_outbox")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AppointmentOutboxEvent {
+    
+    @Id
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "appointment_outbox_seq")
+    @SequenceGenerator(name = "appointment_outbox_seq", sequenceName = "appointment_outbox_id_seq", allocationSize = 50)
+    private Long id;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    private AppointmentEvent.Type eventType;
+    
+    @Column(nullable = false)
+    private Long appointmentId;
+    
+    @Column(nullable = false)
+    private Long userId;
+    
+    @Column(nullable = false)
+    private Integer doctorId;
+    
+    @Column(nullable = false)
+    private LocalDateTime appointmentDate;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 20)
+    private AppointmentStatus appointmentStatus;
+    
+    @Enumerated(EnumType.STRING)
+    @Column(nullable = false, length = 10)
+    @ColumnDefault("'PENDING'")
+    private Status status = Status.PENDING;
+    
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private Integer attempts = 0;
+    
+    @Column(nullable = false)
+    private LocalDateTime availableAt;
+    
+    @Column(nullable = false, updatable = false)
+    private LocalDateTime createdAt;
+    
+    @Column(length = 500)
+    private String lastError;
+    
+    public enum Status {
+        PENDING,
+        FAILED
+    }
+    
+    public static AppointmentOutboxEvent of(AppointmentEvent event) {
+        AppointmentOutboxEvent outboxEvent = new AppointmentOutboxEvent();
+        outboxEvent.setEventType(event.type());
+        outboxEvent.setAppointmentId(event.appointmentId());
+        outboxEvent.setUserId(event.userId());
+        outboxEvent.setDoctorId(event.doctorId());
+        outboxEvent.setAppointmentDate(event.appointmentDate());
+        outboxEvent.setAppointmentStatus(event.status());
+        return outboxEvent;
+    }
+    
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+        availableAt = createdAt;
+    }
+    
+    public AppointmentEvent toEvent() {
+        return new AppointmentEvent(eventType, appointmentId, userId, doctorId, appointmentDate, appointmentStatus);
+    }
+}
@@ -0,0 +1,15 @@
+package com.clinic.appointment.outbox;
+
+import java.util.List;
+
+/**
+ * Downstream work on committed appointment changes - notifications, audit, analytics - run by
+ * OutboxRelay off the request path. Every consumer bean sees every change once a batch is
+ * relayed; throwing rolls the batch back and the whole batch is redelivered to every consumer
+ * after a backoff, so handling must be idempotent. Batches are not ordered with respect to
+ * each other.
+ */
+public interface AppointmentEventConsumer {
+    
+    void accept(List<OutboxMessage> messages);
+}
@@ -0,0 +1,26 @@
+package com.clinic.appointment.outbox;
+
+import com.clinic.appointment.event.AppointmentEvent;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Writes one audit line per appointment change to the com.clinic.appointment.outbox log
+ */
+@Component
+@ConditionalOnProperty(name = "clinic.outbox.audit-log", havingValue = "true", matchIfMissing = true)
+@Slf4j
+public class AuditLogConsumer implements AppointmentEventConsumer {
+    
+    @Override
+    public void accept(List<OutboxMessage> messages) {
+        for (OutboxMessage message : messages) {
+            AppointmentEvent event = message.event();
+            log.info("Appointment {} {} at {}: user {}, doctor {}, {} at {}", event.appointmentId(), event.type(),
+                message.createdAt(), event.userId(), event.doctorId(), event.status(), event.appointmentDate());
+        }
+    }
+}
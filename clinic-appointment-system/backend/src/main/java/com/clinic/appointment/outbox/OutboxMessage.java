@@ -0,0 +1,12 @@
+package com.clinic.appointment.outbox;
+
+import com.clinic.appointment.event.AppointmentEvent;
+
+import java.time.LocalDateTime;
+
+/**
+ * One committed appointment change as relayed from the outbox. The id is unique per change
+ * and lets a consumer recognise a redelivery.
+ */
+public record OutboxMessage(Long id, LocalDateTime createdAt, int attempt, AppointmentEvent event) {
+}
@@ -0,0 +1,173 @@
+package com.clinic.appointment.outbox;
+
+import com.clinic.appointment.model.AppointmentOutboxEvent;
+import com.clinic.appointment.repository.AppointmentOutboxRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Drains the appointment outbox to the {@link AppointmentEventConsumer} beans. Each of
+ * clinic.outbox.workers workers locks a batch with FOR UPDATE SKIP LOCKED, hands it to every
+ * consumer and deletes it, all in one transaction, so workers on one node or many never
+ * share a batch and a crash before commit leaves the batch to be relayed again. A batch a
+ * consumer rejects is retried after clinic.outbox.retry-delay-seconds, doubling per attempt, and
+ * parked as FAILED after clinic.outbox.max-attempts.
+ */
+@Component
+@Slf4j
+public class OutboxRelay {
+    
+    private final AppointmentOutboxRepository outboxRepository;
+    private final List<AppointmentEventConsumer> consumers;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final int workers;
+    private final int batchSize;
+    private final long pollIntervalMillis;
+    private final long retryDelaySeconds;
+    private final int maxAttempts;
+    private final ExecutorService workerPool = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("outbox-relay-", 0).factory());
+    private final Counter relayed;
+    private final Counter failed;
+    private final Timer lag;
+    private volatile boolean running;
+    
+    public OutboxRelay(AppointmentOutboxRepository outboxRepository,
+                       List<AppointmentEventConsumer> consumers,
+                       PlatformTransactionManager transactionManager,
+                       MeterRegistry meterRegistry,
+                       @Value("${clinic.outbox.enabled:true}") boolean enabled,
+                       @Value("${clinic.outbox.workers:2}") int workers,
+                       @Value("${clinic.outbox.batch-size:100}") int batchSize,
+                       @Value("${clinic.outbox.poll-interval-ms:500}") long pollIntervalMillis,
+                       @Value("${clinic.outbox.retry-delay-seconds:5}") long retryDelaySeconds,
+                       @Value("${clinic.outbox.max-attempts:10}") int maxAttempts) {
+        this.outboxRepository = outboxRepository;
+        this.consumers = consumers;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.pollIntervalMillis = pollIntervalMillis;
+        this.retryDelaySeconds = retryDelaySeconds;
+        this.maxAttempts = maxAttempts;
+        this.relayed = Counter.builder("clinic.outbox.relayed")
+            .description("Outbox events handed to every consumer and removed")
+            .register(meterRegistry);
+        this.failed = Counter.builder("clinic.outbox.failed")
+            .description("Outbox events in batches a consumer rejected")
+            .register(meterRegistry);
+        this.lag = Timer.builder("clinic.outbox.lag")
+            .description("Delay between an appointment change and its relay")
+            .register(meterRegistry);
+    }
+    
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        running = true;
+        for (int i = 0; i < workers; i++) {
+            workerPool.execute(this::run);
+        }
+        log.info("Started {} outbox relay workers for {} consumers", workers, consumers.size());
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        workerPool.shutdownNow();
+    }
+    
+    /**
+     * Relays one batch and returns its size; a full batch means more may be waiting
+     */
+    private int relayBatch() {
+        List<Long> ids = new ArrayList<>();
+        List<LocalDateTime> createdAt = new ArrayList<>();
+        try {
+            Integer count = transactionTemplate.execute(status -> {
+                List<AppointmentOutboxEvent> batch = outboxRepository.lockNextBatch(LocalDateTime.now(), batchSize);
+                if (batch.isEmpty()) {
+                    return 0;
+                }
+                List<OutboxMessage> messages = new ArrayList<>(batch.size());
+                for (AppointmentOutboxEvent event : batch) {
+                    ids.add(event.getId());
+                    createdAt.add(event.getCreatedAt());
+                    messages.add(new OutboxMessage(event.getId(), event.getCreatedAt(), event.getAttempts() + 1,
+                        event.toEvent()));
+                }
+                try {
+                    for (AppointmentEventConsumer consumer : consumers) {
+                        consumer.accept(messages);
+                    }
+                } catch (RuntimeException e) {
+                    // Recorded while the rows are still locked, so no other worker retries them early
+                    recordFailure(ids, e);
+                    return 0;
+                }
+                outboxRepository.deleteByIds(ids);
+                return batch.size();
+            });
+            if (count > 0) {
+                LocalDateTime now = LocalDateTime.now();
+                createdAt.forEach(created -> lag.record(Duration.between(created, now)));
+                relayed.increment(count);
+            }
+            return count;
+        } catch (RuntimeException e) {
+            if (ids.isEmpty()) {
+                throw e;
+            }
+            // A consumer left the transaction unusable; the batch was rolled back and is counted here
+            transactionTemplate.executeWithoutResult(status -> recordFailure(ids, e));
+            return 0;
+        }
+    }
+    
+    private void recordFailure(List<Long> ids, RuntimeException e) {
+        String error = e.toString();
+        outboxRepository.recordFailure(ids, error.substring(0, Math.min(error.length(), 500)), LocalDateTime.now(),
+            retryDelaySeconds, maxAttempts);
+        failed.increment(ids.size());
+        log.warn("Relaying {} outbox events failed, retrying after backoff: {}", ids.size(), error);
+    }
+    
+    private void run() {
+        while (running) {
+            int count;
+            try {
+                count = relayBatch();
+            } catch (RuntimeException e) {
+                log.warn("Outbox relay poll failed: {}", e.toString());
+                count = 0;
+            }
+            if (count < batchSize) {
+                try {
+                    Thread.sleep(pollIntervalMillis);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,149 @@
+package com.clinic.appointment.reminder;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Hashed timing wheel: timers are hashed by deadline into a ring of buckets that a single
+ * worker thread visits one per tick, so scheduling and cancelling cost O(1) whatever the
+ * number of timers, and a tick only walks its own bucket. A timer further out than one turn
+ * of the wheel waits there for the remaining rounds. Deadlines are rounded up to the tick.
+ * <p>
+ * New timers are queued and only placed in their bucket by the worker, so buckets need no
+ * locking; cancelled timers are dropped when their bucket comes round. Everything that
+ * expires in one tick is handed to the consumer as one batch, on the worker thread.
+ */
+final class HashedTimingWheel<T> {
+    
+    private final long tickNanos;
+    private final List<List<Timer<T>>> wheel;
+    private final int mask;
+    private final Queue<Timer<T>> pending = new ConcurrentLinkedQueue<>();
+    private final Consumer<List<T>> onExpired;
+    private final Thread worker;
+    private final long startedAt;
+    private volatile boolean running = true;
+    private long tick;
+    
+    HashedTimingWheel(Duration tickDuration, int ticksPerWheel, String threadName, Consumer<List<T>> onExpired) {
+        int buckets = Integer.highestOneBit(Math.max(ticksPerWheel - 1, 1)) << 1;
+        this.tickNanos = tickDuration.toNanos();
+        this.wheel = new ArrayList<>(buckets);
+        for (int i = 0; i < buckets; i++) {
+            wheel.add(new ArrayList<>());
+        }
+        this.mask = buckets - 1;
+        this.onExpired = onExpired;
+        this.startedAt = System.nanoTime();
+        this.worker = Thread.ofPlatform().name(threadName).daemon().unstarted(this::run);
+        worker.start();
+    }
+    
+    /**
+     * Fires the task at the deadline, or on the next tick if the deadline has passed
+     */
+    Timer<T> schedule(T task, Instant deadline) {
+        long delay = Duration.between(Instant.now(), deadline).toNanos();
+        Timer<T> timer = new Timer<>(task, System.nanoTime() + Math.max(delay, 0) - startedAt);
+        pending.add(timer);
+        return timer;
+    }
+    
+    void stop() {
+        running = false;
+        worker.interrupt();
+    }
+    
+    private void run() {
+        while (running) {
+            long deadline = tickNanos * (tick + 1);
+            long sleep = deadline - (System.nanoTime() - startedAt);
+            if (sleep > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleep);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            transferPending();
+            List<T> expired = expire(wheel.get((int) (tick & mask)), deadline);
+            tick++;
+            if (!expired.isEmpty()) {
+                onExpired.accept(expired);
+            }
+        }
+    }
+    
+    private void transferPending() {
+        Timer<T> timer;
+        while ((timer = pending.poll()) != null) {
+            if (timer.cancelled) {
+                continue;
+            }
+            long due = timer.deadline / tickNanos;
+            timer.rounds = (due - tick) / wheel.size();
+            // A deadline already passed goes in the current bucket, which is about to expire
+            wheel.get((int) (Math.max(due, tick) & mask)).add(timer);
+        }
+    }
+    
+    private List<T> expire(List<Timer<T>> bucket, long deadline) {
+        List<T> expired = new ArrayList<>();
+        for (Iterator<Timer<T>> it = bucket.iterator(); it.hasNext(); ) {
+            Timer<T> timer = it.next();
+            if (timer.cancelled) {
+                it.remove();
+            } else if (timer.rounds <= 0 && timer.deadline <= deadline) {
+                it.remove();
+                if (timer.expire()) {
+                    expired.add(timer.task);
+                }
+            } else {
+                timer.rounds--;
+            }
+        }
+        return expired;
+    }
+    
+    static final class Timer<T> {
+        
+        private final T task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger();
+        private volatile boolean cancelled;
+        private long rounds;
+        
+        private Timer(T task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+        
+        T task() {
+            return task;
+        }
+        
+        /**
+         * Returns false if the timer had already expired or been cancelled
+         */
+        boolean cancel() {
+            if (!state.compareAndSet(0, 1)) {
+                return false;
+            }
+            cancelled = true;
+            return true;
+        }
+        
+        private boolean expire() {
+            return state.compareAndSet(0, 2);
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.clinic.appointment.reminder;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Stand-in for an SMS or email gateway: logs each reminder and, when
+ * clinic.reminders.outbox-file is set, appends it to that file as one JSON line
+ */
+@Component
+@ConditionalOnProperty(name = "clinic.reminders.sender", havingValue = "log", matchIfMissing = true)
+@Slf4j
+public class LogReminderSender implements ReminderSender {
+    
+    private final ObjectWriter jsonWriter;
+    private final Path outbox;
+    
+    public LogReminderSender(ObjectMapper objectMapper,
+                             @Value("${clinic.reminders.outbox-file:}") String outboxFile) {
+        this.jsonWriter = objectMapper.writerFor(Reminder.class);
+        this.outbox = outboxFile.isBlank() ? null : Path.of(outboxFile);
+    }
+    
+    @Override
+    public void send(Reminder reminder) {
+        log.info("Reminder {} for appointment {} with {} at {} to {} ({}, {})", reminder.kind(),
+            reminder.appointmentId(), reminder.doctorName(), reminder.appointmentDate(),
+            reminder.patientName(), reminder.patientPhone(), reminder.email());
+        if (outbox == null) {
+            return;
+        }
+        try {
+            String line = jsonWriter.writeValueAsString(reminder) + "\n";
+            synchronized (this) {
+                Files.writeString(outbox, line, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not write reminder to " + outbox, e);
+        }
+    }
+}
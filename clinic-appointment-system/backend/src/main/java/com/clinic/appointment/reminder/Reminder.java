@@ -0,0 +1,11 @@
+package com.clinic.appointment.reminder;
+
+import java.time.LocalDateTime;
+
+/**
+ * A reminder claimed for sending, with what the message needs to say and where it goes
+ */
+public record Reminder(Long appointmentId, ReminderKind kind, LocalDateTime appointmentDate,
+                       String patientName, String patientPhone, String email,
+                       String doctorName, String department) {
+}
@@ -0,0 +1,245 @@
+package com.clinic.appointment.reminder;
+
+import com.clinic.appointment.event.AppointmentEvent;
+import com.clinic.appointment.event.AppointmentEventBus;
+import com.clinic.appointment.model.Appointment.AppointmentStatus;
+import com.clinic.appointment.reminder.ReminderStore.DueReminder;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Sends the reminders of {@link ReminderKind} ahead of every active appointment. Each
+ * minute the reminders falling due over the next few minutes are loaded into a hashed timing
+ * wheel, which fires them on time without polling the table; bookings, reschedules and
+ * cancellations made through this node adjust the wheel as their events are published.
+ * <p>
+ * When a reminder fires it is claimed in appointment_reminders, checking in the same
+ * statement that the appointment is still active at that date, and only then handed to the
+ * {@link ReminderSender}. A reminder is therefore sent at most once across restarts and
+ * nodes; one claimed by a node that dies before sending stays CLAIMED and is not retried.
+ */
+@Component
+@Slf4j
+public class ReminderDispatcher {
+    
+    private static final int TICKS_PER_WHEEL = 512;
+    private static final int CLAIM_BATCH_SIZE = 500;
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(30);
+    
+    private final ReminderStore store;
+    private final ReminderSender sender;
+    private final boolean enabled;
+    private final Duration lookahead;
+    private final Duration catchUp;
+    private final int retentionDays;
+    private final HashedTimingWheel<DueReminder> wheel;
+    private final Map<ReminderKey, HashedTimingWheel.Timer<DueReminder>> scheduled = new ConcurrentHashMap<>();
+    private final ExecutorService dispatcher = Executors.newThreadPerTaskExecutor(
+        Thread.ofVirtual().name("reminder-dispatch-", 0).factory());
+    private final Counter sent;
+    private final Counter failed;
+    private final Counter skipped;
+    private final Timer lag;
+    // Due times up to here are in the wheel; later ones are left to the next load
+    private volatile LocalDateTime loadedUntil;
+    
+    private record ReminderKey(long appointmentId, ReminderKind kind) {
+    }
+    
+    public ReminderDispatcher(ReminderStore store,
+                              ReminderSender sender,
+                              AppointmentEventBus eventBus,
+                              MeterRegistry meterRegistry,
+                              @Value("${clinic.reminders.enabled:true}") boolean enabled,
+                              @Value("${clinic.reminders.tick-ms:1000}") long tickMillis,
+                              @Value("${clinic.reminders.lookahead-ms:300000}") long lookaheadMillis,
+                              @Value("${clinic.reminders.catch-up-minutes:15}") int catchUpMinutes,
+                              @Value("${clinic.reminders.retention-days:7}") int retentionDays) {
+        this.store = store;
+        this.sender = sender;
+        this.enabled = enabled;
+        this.lookahead = Duration.ofMillis(lookaheadMillis);
+        this.catchUp = Duration.ofMinutes(catchUpMinutes);
+        this.retentionDays = retentionDays;
+        this.loadedUntil = LocalDateTime.now().minus(catchUp);
+        this.wheel = enabled
+            ? new HashedTimingWheel<>(Duration.ofMillis(tickMillis), TICKS_PER_WHEEL, "reminder-wheel", this::fire)
+            : null;
+        this.sent = Counter.builder("clinic.reminders.sent")
+            .description("Reminders handed to the sender")
+            .register(meterRegistry);
+        this.failed = Counter.builder("clinic.reminders.failed")
+            .description("Reminders the sender rejected")
+            .register(meterRegistry);
+        this.skipped = Counter.builder("clinic.reminders.skipped")
+            .description("Reminders dropped on firing: appointment cancelled or moved, or already claimed")
+            .register(meterRegistry);
+        this.lag = Timer.builder("clinic.reminders.lag")
+            .description("Delay between a reminder falling due and its claim")
+            .register(meterRegistry);
+        Gauge.builder("clinic.reminders.scheduled", scheduled, Map::size)
+            .description("Reminders waiting in the timing wheel")
+            .register(meterRegistry);
+        if (enabled) {
+            eventBus.addListener(this::onAppointmentChanged);
+        }
+    }
+    
+    /**
+     * Loads the reminders falling due before now plus clinic.reminders.lookahead-ms. After
+     * downtime, reminders missed by up to clinic.reminders.catch-up-minutes still go out.
+     */
+    @Scheduled(fixedDelayString = "${clinic.reminders.load-interval-ms:60000}")
+    public void loadDueReminders() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime from = max(loadedUntil, now.minus(catchUp));
+        LocalDateTime until = now.plus(lookahead);
+        // Moved first, so a booking committed while the window loads is scheduled by its event
+        loadedUntil = until;
+        
+        int loaded = 0;
+        for (ReminderKind kind : ReminderKind.values()) {
+            for (DueReminder due : store.findDue(kind, from, until)) {
+                if (scheduled.computeIfAbsent(key(due), key -> schedule(due)).task() == due) {
+                    loaded++;
+                }
+            }
+        }
+        log.debug("Loaded {} reminders due until {}; {} waiting", loaded, until, scheduled.size());
+    }
+    
+    /**
+     * Runs every day at 3:45 AM to drop dispatch state for appointments more than
+     * clinic.reminders.retention-days in the past
+     */
+    @Scheduled(cron = "0 45 3 * * ?")
+    public void pruneDispatchState() {
+        if (!enabled) {
+            return;
+        }
+        int pruned = store.prune(LocalDateTime.now().minusDays(retentionDays));
+        log.info("Pruned {} reminder dispatch records", pruned);
+    }
+    
+    @PreDestroy
+    public void shutdown() {
+        if (wheel != null) {
+            wheel.stop();
+        }
+        dispatcher.shutdown();
+    }
+    
+    /**
+     * Reschedules or cancels the reminders of a changed appointment. Only due times already
+     * loaded are scheduled here; later ones are picked up by the next load.
+     */
+    private void onAppointmentChanged(AppointmentEvent event) {
+        boolean active = event.type() != AppointmentEvent.Type.DELETED
+            && (event.status() == AppointmentStatus.SCHEDULED || event.status() == AppointmentStatus.CONFIRMED);
+        LocalDateTime earliest = LocalDateTime.now().minus(catchUp);
+        for (ReminderKind kind : ReminderKind.values()) {
+            DueReminder due = new DueReminder(event.appointmentId(), kind, event.appointmentDate());
+            boolean wanted = active && due.dueAt().isAfter(earliest) && !due.dueAt().isAfter(loadedUntil);
+            scheduled.compute(key(due), (key, existing) -> {
+                if (existing != null) {
+                    if (wanted && existing.task().appointmentDate().equals(due.appointmentDate())) {
+                        return existing;
+                    }
+                    existing.cancel();
+                }
+                return wanted ? schedule(due) : null;
+            });
+        }
+    }
+    
+    private HashedTimingWheel.Timer<DueReminder> schedule(DueReminder due) {
+        return wheel.schedule(due, due.dueAt().atZone(ZoneId.systemDefault()).toInstant());
+    }
+    
+    /**
+     * Runs on the wheel thread, so the database work is handed off
+     */
+    private void fire(List<DueReminder> expired) {
+        for (DueReminder due : expired) {
+            scheduled.computeIfPresent(key(due), (key, timer) -> timer.task() == due ? null : timer);
+        }
+        for (int i = 0; i < expired.size(); i += CLAIM_BATCH_SIZE) {
+            List<DueReminder> batch = expired.subList(i, Math.min(i + CLAIM_BATCH_SIZE, expired.size()));
+            dispatcher.execute(() -> dispatch(batch));
+        }
+    }
+    
+    private void dispatch(List<DueReminder> batch) {
+        List<Reminder> claimed;
+        try {
+            claimed = store.claim(batch);
+        } catch (DataAccessException e) {
+            log.warn("Could not claim {} reminders, retrying in {}s", batch.size(), RETRY_DELAY.toSeconds(), e);
+            retry(batch);
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        batch.forEach(due -> lag.record(Duration.between(due.dueAt(), now)));
+        skipped.increment(batch.size() - claimed.size());
+        
+        List<Reminder> delivered = new ArrayList<>(claimed.size());
+        for (Reminder reminder : claimed) {
+            try {
+                sender.send(reminder);
+                delivered.add(reminder);
+            } catch (RuntimeException e) {
+                failed.increment();
+                log.warn("Reminder {} for appointment {} failed: {}", reminder.kind(), reminder.appointmentId(), e.getMessage());
+                store.markFailed(reminder, e.getMessage());
+            }
+        }
+        if (!delivered.isEmpty()) {
+            store.markSent(delivered);
+            sent.increment(delivered.size());
+        }
+    }
+    
+    /**
+     * Puts unclaimed reminders back in the wheel, unless they are past catching up or a
+     * change to the appointment has replaced them meanwhile
+     */
+    private void retry(List<DueReminder> batch) {
+        LocalDateTime earliest = LocalDateTime.now().minus(catchUp);
+        Instant retryAt = Instant.now().plus(RETRY_DELAY);
+        for (DueReminder due : batch) {
+            if (due.dueAt().isAfter(earliest)) {
+                scheduled.computeIfAbsent(key(due), key -> wheel.schedule(due, retryAt));
+            }
+        }
+    }
+    
+    private static ReminderKey key(DueReminder due) {
+        return new ReminderKey(due.appointmentId(), due.kind());
+    }
+    
+    private static LocalDateTime max(LocalDateTime a, LocalDateTime b) {
+        return a.isAfter(b) ? a : b;
+    }
+}
@@ -0,0 +1,21 @@
+package com.clinic.appointment.reminder;
+
+import java.time.Duration;
+
+/**
+ * The reminders sent ahead of each active appointment, and how long before it each is due
+ */
+public enum ReminderKind {
+    DAY_BEFORE(Duration.ofHours(24)),
+    HOUR_BEFORE(Duration.ofHours(1));
+    
+    private final Duration lead;
+    
+    ReminderKind(Duration lead) {
+        this.lead = lead;
+    }
+    
+    public Duration lead() {
+        return lead;
+    }
+}
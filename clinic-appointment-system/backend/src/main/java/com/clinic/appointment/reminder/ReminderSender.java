@@ -0,0 +1,11 @@
+package com.clinic.appointment.reminder;
+
+/**
+ * Delivers one reminder over SMS, email or whatever channel the deployment provides.
+ * Implementations are selected with clinic.reminders.sender; a RuntimeException marks the
+ * reminder FAILED, and it is not retried.
+ */
+public interface ReminderSender {
+    
+    void send(Reminder reminder);
+}
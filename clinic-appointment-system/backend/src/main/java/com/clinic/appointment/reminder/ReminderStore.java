@@ -0,0 +1,112 @@
+package com.clinic.appointment.reminder;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Reads due reminders from appointments and keeps their dispatch state in
+ * appointment_reminders (V7__appointment_reminders.sql). Each statement commits on its own.
+ */
+@Repository
+@RequiredArgsConstructor
+class ReminderStore {
+    
+    private static final String ACTIVE = "a.status IN ('SCHEDULED', 'CONFIRMED')";
+    
+    private static final String CLAIM_SQL =
+        "WITH due (appointment_id, kind, appointment_date) AS (" +
+        "  SELECT * FROM unnest(?::bigint[], ?::varchar[], ?::timestamp[])" +
+        "), claimed AS (" +
+        "  INSERT INTO appointment_reminders (appointment_id, kind, appointment_date)" +
+        "  SELECT a.id, d.kind, a.appointment_date FROM due d" +
+        "  JOIN appointments a ON a.id = d.appointment_id AND a.appointment_date = d.appointment_date" +
+        "  WHERE " + ACTIVE +
+        "  ON CONFLICT DO NOTHING" +
+        "  RETURNING appointment_id, kind, appointment_date" +
+        ") " +
+        "SELECT c.appointment_id, c.kind, c.appointment_date, a.patient_name, a.patient_phone, u.email, " +
+        "doc.name AS doctor_name, dep.name AS department " +
+        "FROM claimed c " +
+        "JOIN appointments a ON a.id = c.appointment_id AND a.appointment_date = c.appointment_date " +
+        "JOIN users u ON u.id = a.user_id " +
+        "JOIN doctors doc ON doc.id = a.doctor_id " +
+        "LEFT JOIN departments dep ON dep.id = doc.department_id";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    record DueReminder(long appointmentId, ReminderKind kind, LocalDateTime appointmentDate) {
+        
+        LocalDateTime dueAt() {
+            return appointmentDate.minus(kind.lead());
+        }
+    }
+    
+    /**
+     * Active appointments whose reminder of this kind falls due in (from, to] and has not
+     * been claimed yet. The date range keeps the scan to the partial index on active
+     * appointments and one or two monthly partitions.
+     */
+    List<DueReminder> findDue(ReminderKind kind, LocalDateTime from, LocalDateTime to) {
+        return jdbcTemplate.query(
+            "SELECT a.id, a.appointment_date FROM appointments a " +
+            "WHERE " + ACTIVE + " AND a.appointment_date > ? AND a.appointment_date <= ? " +
+            "AND NOT EXISTS (SELECT 1 FROM appointment_reminders r WHERE r.appointment_id = a.id " +
+            "AND r.kind = ? AND r.appointment_date = a.appointment_date)",
+            (rs, rowNum) -> new DueReminder(rs.getLong("id"), kind,
+                rs.getTimestamp("appointment_date").toLocalDateTime()),
+            from.plus(kind.lead()), to.plus(kind.lead()), kind.name());
+    }
+    
+    /**
+     * Claims the reminders whose appointment is still active at the same date and that no
+     * one has claimed before, and returns them ready to send. The rest are dropped: the
+     * appointment was cancelled, moved or deleted, or another node got there first.
+     */
+    List<Reminder> claim(List<DueReminder> due) {
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(CLAIM_SQL);
+            ps.setArray(1, con.createArrayOf("bigint",
+                due.stream().map(DueReminder::appointmentId).toArray(Long[]::new)));
+            ps.setArray(2, con.createArrayOf("varchar",
+                due.stream().map(reminder -> reminder.kind().name()).toArray(String[]::new)));
+            ps.setArray(3, con.createArrayOf("timestamp",
+                due.stream().map(reminder -> Timestamp.valueOf(reminder.appointmentDate())).toArray(Timestamp[]::new)));
+            return ps;
+        }, (rs, rowNum) -> new Reminder(rs.getLong("appointment_id"), ReminderKind.valueOf(rs.getString("kind")),
+            rs.getTimestamp("appointment_date").toLocalDateTime(), rs.getString("patient_name"),
+            rs.getString("patient_phone"), rs.getString("email"), rs.getString("doctor_name"),
+            rs.getString("department")));
+    }
+    
+    void markSent(List<Reminder> reminders) {
+        jdbcTemplate.batchUpdate(
+            "UPDATE appointment_reminders SET status = 'SENT', sent_at = CURRENT_TIMESTAMP " +
+            "WHERE appointment_id = ? AND kind = ? AND appointment_date = ?",
+            reminders, reminders.size(), (ps, reminder) -> {
+                ps.setLong(1, reminder.appointmentId());
+                ps.setString(2, reminder.kind().name());
+                ps.setTimestamp(3, Timestamp.valueOf(reminder.appointmentDate()));
+            });
+    }
+    
+    void markFailed(Reminder reminder, String error) {
+        jdbcTemplate.update(
+            "UPDATE appointment_reminders SET status = 'FAILED', error = ? " +
+            "WHERE appointment_id = ? AND kind = ? AND appointment_date = ?",
+            error == null ? null : error.substring(0, Math.min(error.length(), 500)),
+            reminder.appointmentId(), reminder.kind().name(), Timestamp.valueOf(reminder.appointmentDate()));
+    }
+    
+    /**
+     * Drops dispatch state for appointments before the cutoff, which can no longer fall due
+     */
+    int prune(LocalDateTime cutoff) {
+        return jdbcTemplate.update("DELETE FROM appointment_reminders WHERE appointment_date < ?", cutoff);
+    }
+}
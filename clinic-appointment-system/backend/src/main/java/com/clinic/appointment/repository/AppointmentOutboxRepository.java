@@ -0,0 +1,40 @@
+package com.clinic.appointment.repository;
+
+import com.clinic.appointment.model.AppointmentOutboxEvent;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface AppointmentOutboxRepository extends JpaRepository<AppointmentOutboxEvent, Long> {
+    
+    /**
+     * Locks the oldest pending events that are due. Rows locked by another relay worker are
+     * skipped rather than waited for, so workers on any number of nodes drain disjoint batches.
+     */
+    @Query(value = "SELECT * FROM appointment_outbox WHERE status = 'PENDING' AND available_at <= :now " +
+                   "ORDER BY id LIMIT :batchSize FOR UPDATE SKIP LOCKED", nativeQuery = true)
+    List<AppointmentOutboxEvent> lockNextBatch(@Param("now") LocalDateTime now, @Param("batchSize") int batchSize);
+    
+    @Modifying
+    @Query("DELETE FROM AppointmentOutboxEvent e WHERE e.id IN :ids")
+    int deleteByIds(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * Puts a failed batch back with exponential backoff from the base delay, and parks events
+     * that have used up their attempts as FAILED
+     */
+    @Modifying
+    @Query(value = "UPDATE appointment_outbox SET attempts = attempts + 1, last_error = :error, " +
+                   "available_at = CAST(:now AS TIMESTAMP) + make_interval(secs => :baseDelaySeconds * power(2, least(attempts, 10))), " +
+                   "status = CASE WHEN attempts + 1 >= :maxAttempts THEN 'FAILED' ELSE status END " +
+                   "WHERE id IN (:ids)", nativeQuery = true)
+    int recordFailure(@Param("ids") Collection<Long> ids, @Param("error") String error, @Param("now") LocalDateTime now,
+                      @Param("baseDelaySeconds") long baseDelaySeconds, @Param("maxAttempts") int maxAttempts);
+}
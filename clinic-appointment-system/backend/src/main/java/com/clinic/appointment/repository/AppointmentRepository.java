@@ -2,23 +2,24 @@ package com.clinic.appointment.repository;
 
 import com.clinic.appointment.model.Appointment;
 import com.clinic.appointment.model.Appointment.AppointmentStatus;
-import com.clinic.appointment.model.User;
+import com.clinic.appointment.schedule.ScheduleEntry;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
-public interface AppointmentRepository extends JpaRepository<Appointment, Long> {
-    
-    List<Appointment> findByUser(User user);
-    
-    List<Appointment> findByUserOrderByAppointmentDateDesc(User user);
-    
-    List<Appointment> findByStatus(AppointmentStatus status);
+public interface AppointmentRepository extends JpaRepository<Appointment, Long>, AppointmentRepositoryCustom {
     
     @Query("SELECT a FROM Appointment a WHERE a.appointmentDate BETWEEN :start AND :end AND a.status = :status")
     List<Appointment> findByAppointmentDateBetweenAndStatus(
@@ -27,12 +28,48 @@ public interface AppointmentRepository extends JpaRepository<Appointment, Long>
         @Param("status") AppointmentStatus status
     );
     
-    @Query("SELECT a FROM Appointment a WHERE a.doctorName = :doctorName AND a.appointmentDate = :appointmentDate AND a.status IN ('SCHEDULED', 'CONFIRMED')")
-    List<Appointment> findConflictingAppointments(
-        @Param("doctorName") String doctorName,
-        @Param("appointmentDate") LocalDateTime appointmentDate
-    );
+    @Query("SELECT a.doctor.id FROM Appointment a WHERE a.id = :id")
+    Optional<Integer> findDoctorIdById(@Param("id") Long id);
+    
+    /**
+     * Read-write on purpose: with read replicas configured, the in-memory schedule must be
+     * loaded from the primary rather than from a replica that may be lagging behind
+     */
+    @Transactional
+    @Query("SELECT new com.clinic.appointment.schedule.ScheduleEntry(a.id, a.doctor.id, a.appointmentDate, a.durationMinutes) " +
+           "FROM Appointment a WHERE a.appointmentDate >= :from AND a.status IN ('SCHEDULED', 'CONFIRMED')")
+    List<ScheduleEntry> findActiveScheduleEntries(@Param("from") LocalDateTime from);
+    
+    /**
+     * Active intervals of one doctor starting in [from, before). Pending changes are not
+     * flushed first: a booking re-checks the slot before it writes, and a flush here would
+     * surface a conflicting move as a constraint violation instead of a refused slot.
+     */
+    @QueryHints(@QueryHint(name = HibernateHints.HINT_FLUSH_MODE, value = "COMMIT"))
+    @Query("SELECT new com.clinic.appointment.schedule.ScheduleEntry(a.id, a.doctor.id, a.appointmentDate, a.durationMinutes) " +
+           "FROM Appointment a WHERE a.doctor.id = :doctorId AND a.appointmentDate >= :from AND a.appointmentDate < :before " +
+           "AND a.status IN ('SCHEDULED', 'CONFIRMED')")
+    List<ScheduleEntry> findActiveScheduleEntries(@Param("doctorId") Integer doctorId,
+                                                  @Param("from") LocalDateTime from,
+                                                  @Param("before") LocalDateTime before);
+    
+    /**
+     * Intervals of those of the given appointments that are active
+     */
+    @Query("SELECT new com.clinic.appointment.schedule.ScheduleEntry(a.id, a.doctor.id, a.appointmentDate, a.durationMinutes) " +
+           "FROM Appointment a WHERE a.id IN :ids AND a.status IN ('SCHEDULED', 'CONFIRMED')")
+    List<ScheduleEntry> findActiveScheduleEntriesByIds(@Param("ids") Collection<Long> ids);
     
-    @Query("SELECT a FROM Appointment a WHERE a.appointmentDate < :date AND a.status IN ('SCHEDULED', 'CONFIRMED')")
-    List<Appointment> findPastScheduledAppointments(@Param("date") LocalDateTime date);
+    /**
+     * Delete one bounded batch of rows in the given status last updated before the cutoff,
+     * with ids in [fromId, toId). Rows are matched on the full (id, appointment_date) key so
+     * each delete is a primary key probe in a single partition.
+     */
+    @Modifying
+    @Query(value = "DELETE FROM appointments WHERE (id, appointment_date) IN (" +
+                   "SELECT id, appointment_date FROM appointments WHERE status = :status AND updated_at < :cutoff " +
+                   "AND id >= :fromId AND id < :toId LIMIT :batchSize FOR UPDATE SKIP LOCKED)", nativeQuery = true)
+    int deleteExpiredBatch(@Param("status") String status, @Param("cutoff") LocalDateTime cutoff,
+                           @Param("fromId") long fromId, @Param("toId") long toId,
+                           @Param("batchSize") int batchSize);
 }
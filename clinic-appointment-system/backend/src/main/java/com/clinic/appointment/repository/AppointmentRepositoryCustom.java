@@ -0,0 +1,59 @@
+package com.clinic.appointment.repository;
+
+import com.clinic.appointment.dto.AppointmentDTO;
+import com.clinic.appointment.dto.AppointmentSearchCriteria;
+import jakarta.persistence.Tuple;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public interface AppointmentRepositoryCustom {
+    
+    Optional<AppointmentDTO> findDtoById(Long id);
+    
+    List<AppointmentDTO> findDtosByIds(Collection<Long> ids);
+    
+    /**
+     * Seek-based page of appointments ordered by (appointmentDate, id), starting
+     * strictly after the given cursor. No count query is issued.
+     */
+    List<AppointmentDTO> findPage(AppointmentSearchCriteria criteria, AppointmentCursor after, int limit);
+    
+    /**
+     * Forward-only cursor over all matching appointments in (appointmentDate, id) order,
+     * fetched from the database fetchSize rows at a time. Must be consumed and closed
+     * inside a transaction.
+     */
+    Stream<AppointmentDTO> streamAll(AppointmentSearchCriteria criteria, int fetchSize);
+    
+    /**
+     * Mark one bounded batch of SCHEDULED/CONFIRMED appointments dated between since and now,
+     * with ids in [fromId, toId), as NO_SHOW and return their id, user_id, doctor_id and
+     * appointment_date. The lower bound keeps the sweep to the latest monthly partitions.
+     * Rows locked by in-flight bookings are skipped and picked up by the next batch or run.
+     * Each transition is written to the outbox by the same statement.
+     */
+    List<Tuple> markPastAppointmentsAsNoShow(LocalDateTime since, LocalDateTime now, long fromId, long toId,
+                                             int batchSize);
+    
+    /**
+     * Ids spanned by the appointments {@link #markPastAppointmentsAsNoShow} would mark, or
+     * empty if there are none
+     */
+    Optional<IdRange> findNoShowIdRange(LocalDateTime since, LocalDateTime now);
+    
+    /**
+     * Same as {@link AppointmentRepository#deleteExpiredBatch} but returns the deleted rows
+     */
+    List<Tuple> deleteExpiredBatchReturningRows(String status, LocalDateTime cutoff, long fromId, long toId,
+                                                int batchSize);
+    
+    /**
+     * Ids spanned by the appointments {@link AppointmentRepository#deleteExpiredBatch} would
+     * delete, or empty if there are none
+     */
+    Optional<IdRange> findExpiredIdRange(String status, LocalDateTime cutoff);
+}
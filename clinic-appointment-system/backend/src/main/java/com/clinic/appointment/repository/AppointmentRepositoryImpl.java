@@ -0,0 +1,229 @@
+package com.clinic.appointment.repository;
+
+import com.clinic.appointment.dto.AppointmentDTO;
+import com.clinic.appointment.dto.AppointmentSearchCriteria;
+import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.model.Department;
+import com.clinic.appointment.model.Doctor;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.Query;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.criteria.CriteriaBuilder;
+import jakarta.persistence.criteria.CompoundSelection;
+import jakarta.persistence.criteria.CriteriaQuery;
+import jakarta.persistence.criteria.Join;
+import jakarta.persistence.criteria.JoinType;
+import jakarta.persistence.criteria.Path;
+import jakarta.persistence.criteria.Predicate;
+import jakarta.persistence.criteria.Root;
+import org.hibernate.jpa.AvailableHints;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
+
+public class AppointmentRepositoryImpl implements AppointmentRepositoryCustom {
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    @Override
+    public Optional<AppointmentDTO> findDtoById(Long id) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AppointmentDTO> query = cb.createQuery(AppointmentDTO.class);
+        Root<Appointment> appointment = query.from(Appointment.class);
+        query.select(dtoSelection(cb, appointment, appointment.join("doctor")))
+            .where(cb.equal(appointment.get("id"), id));
+        return entityManager.createQuery(query).getResultStream().findFirst();
+    }
+    
+    @Override
+    public List<AppointmentDTO> findDtosByIds(Collection<Long> ids) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AppointmentDTO> query = cb.createQuery(AppointmentDTO.class);
+        Root<Appointment> appointment = query.from(Appointment.class);
+        query.select(dtoSelection(cb, appointment, appointment.join("doctor")))
+            .where(appointment.get("id").in(ids));
+        return entityManager.createQuery(query).getResultList();
+    }
+    
+    @Override
+    public List<AppointmentDTO> findPage(AppointmentSearchCriteria criteria, AppointmentCursor after, int limit) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AppointmentDTO> query = cb.createQuery(AppointmentDTO.class);
+        Root<Appointment> appointment = query.from(Appointment.class);
+        Path<LocalDateTime> date = appointment.get("appointmentDate");
+        Path<Long> id = appointment.get("id");
+        
+        Join<Appointment, Doctor> doctor = appointment.join("doctor");
+        List<Predicate> predicates = filterPredicates(cb, appointment, doctor, criteria);
+        
+        // Seek past the cursor; the redundant bound on the date alone keeps this an index range scan
+        if (after != null) {
+            if (criteria.isDescending()) {
+                predicates.add(cb.lessThanOrEqualTo(date, after.appointmentDate()));
+                predicates.add(cb.or(
+                    cb.lessThan(date, after.appointmentDate()),
+                    cb.lessThan(id, after.id())
+                ));
+            } else {
+                predicates.add(cb.greaterThanOrEqualTo(date, after.appointmentDate()));
+                predicates.add(cb.or(
+                    cb.greaterThan(date, after.appointmentDate()),
+                    cb.greaterThan(id, after.id())
+                ));
+            }
+        }
+        
+        query.select(dtoSelection(cb, appointment, doctor))
+            .where(predicates.toArray(new Predicate[0]))
+            .orderBy(criteria.isDescending()
+                ? List.of(cb.desc(date), cb.desc(id))
+                : List.of(cb.asc(date), cb.asc(id)));
+        
+        return entityManager.createQuery(query)
+            .setMaxResults(limit)
+            .getResultList();
+    }
+    
+    private List<Predicate> filterPredicates(CriteriaBuilder cb, Root<Appointment> appointment,
+                                            Join<Appointment, Doctor> doctor, AppointmentSearchCriteria criteria) {
+        Path<LocalDateTime> date = appointment.get("appointmentDate");
+        List<Predicate> predicates = new ArrayList<>();
+        if (criteria.getUserId() != null) {
+            predicates.add(cb.equal(appointment.get("user").get("id"), criteria.getUserId()));
+        }
+        if (criteria.getDoctorId() != null) {
+            predicates.add(cb.equal(appointment.get("doctor").get("id"), criteria.getDoctorId()));
+        }
+        if (criteria.getDepartmentId() != null) {
+            predicates.add(cb.equal(doctor.get("department").get("id"), criteria.getDepartmentId()));
+        }
+        if (criteria.getStatus() != null) {
+            predicates.add(cb.equal(appointment.get("status"), criteria.getStatus()));
+        }
+        if (criteria.getFrom() != null) {
+            predicates.add(cb.greaterThanOrEqualTo(date, criteria.getFrom()));
+        }
+        if (criteria.getTo() != null) {
+            predicates.add(cb.lessThan(date, criteria.getTo()));
+        }
+        return predicates;
+    }
+    
+    @Override
+    public Stream<AppointmentDTO> streamAll(AppointmentSearchCriteria criteria, int fetchSize) {
+        CriteriaBuilder cb = entityManager.getCriteriaBuilder();
+        CriteriaQuery<AppointmentDTO> query = cb.createQuery(AppointmentDTO.class);
+        Root<Appointment> appointment = query.from(Appointment.class);
+        Join<Appointment, Doctor> doctor = appointment.join("doctor");
+        query.select(dtoSelection(cb, appointment, doctor))
+            .where(filterPredicates(cb, appointment, doctor, criteria).toArray(new Predicate[0]))
+            .orderBy(cb.asc(appointment.get("appointmentDate")), cb.asc(appointment.get("id")));
+        
+        return entityManager.createQuery(query)
+            .setHint(AvailableHints.HINT_FETCH_SIZE, fetchSize)
+            .setHint(AvailableHints.HINT_READ_ONLY, true)
+            .getResultStream();
+    }
+    
+    /**
+     * Builds AppointmentDTO straight from the result set, so reads never hydrate or
+     * snapshot managed entities. Arguments follow the field order of AppointmentDTO.
+     */
+    private CompoundSelection<AppointmentDTO> dtoSelection(CriteriaBuilder cb, Root<Appointment> appointment,
+                                                           Join<Appointment, Doctor> doctor) {
+        Join<Doctor, Department> department = doctor.join("department", JoinType.LEFT);
+        return cb.construct(AppointmentDTO.class,
+            appointment.get("id"),
+            appointment.get("user").get("id"),
+            appointment.get("patientName"),
+            appointment.get("patientPhone"),
+            appointment.get("appointmentDate"),
+            appointment.get("durationMinutes"),
+            doctor.get("name"),
+            department.get("name"),
+            appointment.get("reason"),
+            appointment.get("status"),
+            appointment.get("notes"),
+            appointment.get("createdAt"),
+            appointment.get("updatedAt"));
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Tuple> markPastAppointmentsAsNoShow(LocalDateTime since, LocalDateTime now, long fromId, long toId,
+                                                    int batchSize) {
+        return entityManager.createNativeQuery(
+                "WITH marked AS (UPDATE appointments SET status = 'NO_SHOW', updated_at = :now " +
+                "WHERE appointment_date >= :since AND appointment_date < :now AND (id, appointment_date) IN (" +
+                "SELECT id, appointment_date FROM appointments " +
+                "WHERE appointment_date >= :since AND appointment_date < :now AND status IN ('SCHEDULED', 'CONFIRMED') " +
+                "AND id >= :fromId AND id < :toId " +
+                "LIMIT :batchSize FOR UPDATE SKIP LOCKED) RETURNING id, user_id, doctor_id, appointment_date), " +
+                "outboxed AS (INSERT INTO appointment_outbox " +
+                "(event_type, appointment_id, user_id, doctor_id, appointment_date, appointment_status) " +
+                "SELECT 'UPDATED', id, user_id, doctor_id, appointment_date, 'NO_SHOW' FROM marked) " +
+                "SELECT * FROM marked",
+                Tuple.class)
+            .setParameter("since", since)
+            .setParameter("now", now)
+            .setParameter("fromId", fromId)
+            .setParameter("toId", toId)
+            .setParameter("batchSize", batchSize)
+            .getResultList();
+    }
+    
+    @Override
+    public Optional<IdRange> findNoShowIdRange(LocalDateTime since, LocalDateTime now) {
+        return idRange(entityManager.createNativeQuery(
+                "SELECT min(id) AS min_id, max(id) AS max_id FROM appointments " +
+                "WHERE appointment_date >= :since AND appointment_date < :now AND status IN ('SCHEDULED', 'CONFIRMED')",
+                Tuple.class)
+            .setParameter("since", since)
+            .setParameter("now", now));
+    }
+    
+    @Override
+    @SuppressWarnings("unchecked")
+    public List<Tuple> deleteExpiredBatchReturningRows(String status, LocalDateTime cutoff, long fromId, long toId,
+                                                       int batchSize) {
+        // Names are joined back in so each archived row stays readable on its own
+        return entityManager.createNativeQuery(
+                "WITH deleted AS (DELETE FROM appointments WHERE (id, appointment_date) IN (" +
+                "SELECT id, appointment_date FROM appointments WHERE status = :status AND updated_at < :cutoff " +
+                "AND id >= :fromId AND id < :toId LIMIT :batchSize FOR UPDATE SKIP LOCKED) RETURNING *) " +
+                "SELECT deleted.*, d.name AS doctor_name, dep.name AS department FROM deleted " +
+                "JOIN doctors d ON d.id = deleted.doctor_id LEFT JOIN departments dep ON dep.id = d.department_id",
+                Tuple.class)
+            .setParameter("status", status)
+            .setParameter("cutoff", cutoff)
+            .setParameter("fromId", fromId)
+            .setParameter("toId", toId)
+            .setParameter("batchSize", batchSize)
+            .getResultList();
+    }
+    
+    @Override
+    public Optional<IdRange> findExpiredIdRange(String status, LocalDateTime cutoff) {
+        return idRange(entityManager.createNativeQuery(
+                "SELECT min(id) AS min_id, max(id) AS max_id FROM appointments " +
+                "WHERE status = :status AND updated_at < :cutoff",
+                Tuple.class)
+            .setParameter("status", status)
+            .setParameter("cutoff", cutoff));
+    }
+    
+    private Optional<IdRange> idRange(Query query) {
+        Tuple row = (Tuple) query.getSingleResult();
+        Number min = row.get("min_id", Number.class);
+        if (min == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new IdRange(min.longValue(), row.get("max_id", Number.class).longValue()));
+    }
+}
@@ -0,0 +1,24 @@
+package com.clinic.appointment.repository;
+
+import com.clinic.appointment.model.Department;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface DepartmentRepository extends JpaRepository<Department, Integer> {
+    
+    /**
+     * Case-insensitive lookup; nameKey must already be lower-cased
+     */
+    @Query("SELECT d FROM Department d WHERE lower(d.name) = :nameKey")
+    Optional<Department> findByNameKey(@Param("nameKey") String nameKey);
+    
+    @Modifying
+    @Query(value = "INSERT INTO departments (name) VALUES (:name) ON CONFLICT DO NOTHING", nativeQuery = true)
+    int insertIfAbsent(@Param("name") String name);
+}
@@ -0,0 +1,36 @@
+package com.clinic.appointment.repository;
+
+import com.clinic.appointment.model.Doctor;
+import com.clinic.appointment.schedule.DoctorRef;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface DoctorRepository extends JpaRepository<Doctor, Integer> {
+    
+    /**
+     * Case-insensitive lookup; nameKey must already be lower-cased
+     */
+    @Query("SELECT new com.clinic.appointment.schedule.DoctorRef(d.id, d.name, dep.name) " +
+           "FROM Doctor d LEFT JOIN d.department dep WHERE lower(d.name) = :nameKey")
+    Optional<DoctorRef> findRefByNameKey(@Param("nameKey") String nameKey);
+    
+    @Query("SELECT new com.clinic.appointment.schedule.DoctorRef(d.id, d.name, dep.name) " +
+           "FROM Doctor d LEFT JOIN d.department dep")
+    List<DoctorRef> findAllRefs();
+    
+    /**
+     * Insert the doctor unless one with the same name already exists; returns 1 if this call inserted it.
+     * Concurrent callers block on the unique index instead of failing the transaction.
+     */
+    @Modifying
+    @Query(value = "INSERT INTO doctors (name, department_id) VALUES (:name, :departmentId) ON CONFLICT DO NOTHING",
+           nativeQuery = true)
+    int insertIfAbsent(@Param("name") String name, @Param("departmentId") Integer departmentId);
+}
@@ -0,0 +1,7 @@
+package com.clinic.appointment.repository;
+
+/**
+ * Smallest and largest id, both inclusive, of the rows a bulk job would touch
+ */
+public record IdRange(long min, long max) {
+}
@@ -0,0 +1,35 @@
+package com.clinic.appointment.repository;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position (xid, seq) in the appointment change log up to which a client is in sync,
+ * exchanged as an opaque URL-safe token
+ */
+public record SyncToken(long xid, long seq) implements Comparable<SyncToken> {
+    
+    public String encode() {
+        String raw = xid + "|" + seq;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    public static SyncToken decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.indexOf('|');
+            return new SyncToken(
+                Long.parseLong(raw.substring(0, separator)),
+                Long.parseLong(raw.substring(separator + 1))
+            );
+        } catch (RuntimeException e) {
+            throw new RuntimeException("Invalid sync token");
+        }
+    }
+    
+    @Override
+    public int compareTo(SyncToken other) {
+        int byXid = Long.compare(xid, other.xid);
+        return byXid != 0 ? byXid : Long.compare(seq, other.seq);
+    }
+}
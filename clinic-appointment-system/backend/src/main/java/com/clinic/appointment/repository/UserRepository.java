@@ -1,9 +1,18 @@
 package com.clinic.appointment.repository;
 
+import com.clinic.appointment.dto.UserDTO;
 import com.clinic.appointment.model.User;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.time.LocalDateTime;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -11,9 +20,44 @@ public interface UserRepository extends JpaRepository<User, Long> {
     
     Optional<User> findByUsername(String username);
     
+    /**
+     * The user, with the row locked until the transaction ends
+     */
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("SELECT u FROM User u WHERE u.id = :id")
+    Optional<User> findByIdForUpdate(@Param("id") Long id);
+    
+    /**
+     * Swap the password hash only if it is still the one given; returns 0 when it has
+     * been changed in the meantime
+     */
+    @Modifying
+    @Transactional
+    @Query("UPDATE User u SET u.password = :newHash, u.updatedAt = :now WHERE u.id = :id AND u.password = :oldHash")
+    int replacePassword(@Param("id") Long id, @Param("oldHash") String oldHash, @Param("newHash") String newHash,
+                        @Param("now") LocalDateTime now);
+    
     Optional<User> findByEmail(String email);
     
     boolean existsByUsername(String username);
     
     boolean existsByEmail(String email);
+    
+    @Query("SELECT new com.clinic.appointment.dto.UserDTO(u.id, u.username, u.email, u.fullName, " +
+           "u.phoneNumber, u.address, u.role, u.active) FROM User u WHERE u.id = :id")
+    Optional<UserDTO> findDtoById(@Param("id") Long id);
+    
+    @Query("SELECT new com.clinic.appointment.dto.UserDTO(u.id, u.username, u.email, u.fullName, " +
+           "u.phoneNumber, u.address, u.role, u.active) FROM User u WHERE u.username = :username")
+    Optional<UserDTO> findDtoByUsername(@Param("username") String username);
+    
+    @Query("SELECT new com.clinic.appointment.dto.UserDTO(u.id, u.username, u.email, u.fullName, " +
+           "u.phoneNumber, u.address, u.role, u.active) FROM User u")
+    List<UserDTO> findAllDtos();
+    
+    /**
+     * Change counter for the user and their appointments, maintained by triggers (V5 migration)
+     */
+    @Query(value = "SELECT data_version FROM users WHERE id = :id", nativeQuery = true)
+    Optional<Long> findDataVersionById(@Param("id") Long id);
 }
@@ -0,0 +1,168 @@
+package com.clinic.appointment.schedule;
+
+import com.clinic.appointment.dto.AppointmentSearchCriteria;
+import com.clinic.appointment.model.Department;
+import com.clinic.appointment.repository.DepartmentRepository;
+import com.clinic.appointment.repository.DoctorRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Maps the doctor and department names used by the API to their integer ids. Names
+ * match case-insensitively with surrounding and repeated whitespace ignored. The table
+ * is small and append-only, so it is cached in full; a miss falls through to the
+ * database so doctors added by other nodes are still found.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DoctorDirectory {
+    
+    private final DoctorRepository doctorRepository;
+    private final DepartmentRepository departmentRepository;
+    
+    private final Map<String, DoctorRef> doctorsByKey = new ConcurrentHashMap<>();
+    private final Map<String, Integer> departmentIdsByKey = new ConcurrentHashMap<>();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile boolean loaded;
+    
+    public Optional<DoctorRef> find(String doctorName) {
+        ensureLoaded();
+        String key = key(doctorName);
+        DoctorRef doctor = doctorsByKey.get(key);
+        if (doctor != null) {
+            return Optional.of(doctor);
+        }
+        Optional<DoctorRef> stored = doctorRepository.findRefByNameKey(key);
+        stored.ifPresent(found -> rememberWhenCommitted(() -> doctorsByKey.put(key, found)));
+        return stored;
+    }
+    
+    public Optional<Integer> findDepartmentId(String department) {
+        ensureLoaded();
+        String key = key(department);
+        Integer id = departmentIdsByKey.get(key);
+        if (id != null) {
+            return Optional.of(id);
+        }
+        Optional<Integer> stored = departmentRepository.findByNameKey(key).map(Department::getId);
+        stored.ifPresent(found -> rememberWhenCommitted(() -> departmentIdsByKey.put(key, found)));
+        return stored;
+    }
+    
+    /**
+     * All known doctors ordered by name
+     */
+    public List<DoctorRef> all() {
+        ensureLoaded();
+        return doctorsByKey.values().stream()
+            .sorted(Comparator.comparing(DoctorRef::name))
+            .toList();
+    }
+    
+    /**
+     * The doctor with this name, created on first booking along with its department.
+     * The department only applies when the doctor is new. Must run inside a transaction.
+     */
+    public DoctorRef resolve(String doctorName, String department) {
+        Optional<DoctorRef> known = find(doctorName);
+        if (known.isPresent()) {
+            return known.get();
+        }
+        Integer departmentId = department == null || department.isBlank() ? null : resolveDepartmentId(department);
+        doctorRepository.insertIfAbsent(normalize(doctorName), departmentId);
+        return find(doctorName)
+            .orElseThrow(() -> new IllegalStateException("Doctor missing after insert: " + doctorName));
+    }
+    
+    /**
+     * Fill in criteria.doctorId/departmentId from the names. Returns false when a name
+     * matches nothing, in which case no appointment can match either.
+     */
+    public boolean resolveFilterIds(AppointmentSearchCriteria criteria) {
+        if (criteria.getDoctorName() != null) {
+            Optional<DoctorRef> doctor = find(criteria.getDoctorName());
+            if (doctor.isEmpty()) {
+                return false;
+            }
+            criteria.setDoctorId(doctor.get().id());
+        }
+        if (criteria.getDepartment() != null) {
+            Optional<Integer> departmentId = findDepartmentId(criteria.getDepartment());
+            if (departmentId.isEmpty()) {
+                return false;
+            }
+            criteria.setDepartmentId(departmentId.get());
+        }
+        return true;
+    }
+    
+    private Integer resolveDepartmentId(String department) {
+        Optional<Integer> known = findDepartmentId(department);
+        if (known.isPresent()) {
+            return known.get();
+        }
+        departmentRepository.insertIfAbsent(normalize(department));
+        return findDepartmentId(department)
+            .orElseThrow(() -> new IllegalStateException("Department missing after insert: " + department));
+    }
+    
+    /**
+     * Rows read inside a transaction may be ones it inserted itself, so they are cached
+     * only once it commits; a rolled-back booking cannot leave behind an id the database never kept
+     */
+    private void rememberWhenCommitted(Runnable remember) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            remember.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                remember.run();
+            }
+        });
+    }
+    
+    private static String normalize(String name) {
+        return name.strip().replaceAll("\\s+", " ");
+    }
+    
+    private static String key(String name) {
+        return normalize(name).toLowerCase(Locale.ROOT);
+    }
+    
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        loadLock.lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            for (DoctorRef doctor : doctorRepository.findAllRefs()) {
+                doctorsByKey.put(key(doctor.name()), doctor);
+            }
+            for (Department department : departmentRepository.findAll()) {
+                departmentIdsByKey.put(key(department.getName()), department.getId());
+            }
+            loaded = true;
+            log.info("Loaded {} doctors in {} departments into the doctor directory",
+                doctorsByKey.size(), departmentIdsByKey.size());
+        } finally {
+            loadLock.unlock();
+        }
+    }
+}
@@ -0,0 +1,7 @@
+package com.clinic.appointment.schedule;
+
+/**
+ * A doctor's id together with the names the API speaks in
+ */
+public record DoctorRef(Integer id, String name, String department) {
+}
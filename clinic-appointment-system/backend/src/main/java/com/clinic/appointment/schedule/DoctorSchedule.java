@@ -0,0 +1,113 @@
+package com.clinic.appointment.schedule;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.List;
+import java.util.NavigableMap;
+import java.util.NavigableSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Sorted set of one doctor's booked intervals. Overlap queries only visit the
+ * entries whose start lies in (start - longest duration, end), so a lookup costs
+ * O(log n) plus the handful of neighbouring visits, even if legacy data overlaps.
+ * Alongside the intervals it keeps one busy-slot bitmap per booked day, rebuilt for
+ * just the touched days on every change. Callers synchronize on the instance.
+ */
+class DoctorSchedule {
+    
+    private static final Comparator<ScheduleEntry> ORDER = Comparator
+        .comparing(ScheduleEntry::start)
+        .thenComparing(ScheduleEntry::appointmentId);
+    
+    private final SlotGrid grid;
+    private final NavigableSet<ScheduleEntry> entries = new TreeSet<>(ORDER);
+    private final NavigableMap<LocalDate, BitSet> busyDays = new TreeMap<>();
+    private long longestMinutes;
+    
+    DoctorSchedule(SlotGrid grid) {
+        this.grid = grid;
+    }
+    
+    void add(ScheduleEntry entry) {
+        entries.add(entry);
+        longestMinutes = Math.max(longestMinutes, Duration.between(entry.start(), entry.end()).toMinutes());
+        rebuildDays(entry);
+    }
+    
+    void remove(ScheduleEntry entry) {
+        if (entries.remove(entry)) {
+            rebuildDays(entry);
+        }
+    }
+    
+    boolean isFree(LocalDateTime start, LocalDateTime end, Long ignoredAppointmentId) {
+        for (ScheduleEntry entry : candidates(start, end)) {
+            if (entry.overlaps(start, end) && !entry.appointmentId().equals(ignoredAppointmentId)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    List<ScheduleEntry> overlapping(LocalDateTime start, LocalDateTime end) {
+        List<ScheduleEntry> overlapping = new ArrayList<>();
+        for (ScheduleEntry entry : candidates(start, end)) {
+            if (entry.overlaps(start, end)) {
+                overlapping.add(entry);
+            }
+        }
+        return overlapping;
+    }
+    
+    /**
+     * Busy slots of the given day; an empty bitmap when nothing is booked
+     */
+    BitSet busySlots(LocalDate date) {
+        BitSet busy = busyDays.get(date);
+        return busy == null ? new BitSet(grid.slotsPerDay()) : (BitSet) busy.clone();
+    }
+    
+    void evictEndedBefore(LocalDateTime cutoff) {
+        entries.removeIf(entry -> !entry.end().isAfter(cutoff));
+        busyDays.headMap(cutoff.toLocalDate(), false).clear();
+    }
+    
+    boolean isEmpty() {
+        return entries.isEmpty();
+    }
+    
+    private Iterable<ScheduleEntry> candidates(LocalDateTime start, LocalDateTime end) {
+        ScheduleEntry lower = new ScheduleEntry(Long.MIN_VALUE, null, start.minusMinutes(longestMinutes), start);
+        ScheduleEntry upper = new ScheduleEntry(Long.MIN_VALUE, null, end, end);
+        return entries.subSet(lower, false, upper, false);
+    }
+    
+    private void rebuildDays(ScheduleEntry changed) {
+        LocalDate lastDay = changed.end().minusNanos(1).toLocalDate();
+        for (LocalDate day = changed.start().toLocalDate(); !day.isAfter(lastDay); day = day.plusDays(1)) {
+            LocalDateTime dayStart = day.atStartOfDay();
+            LocalDateTime dayEnd = dayStart.plusDays(1);
+            BitSet busy = new BitSet(grid.slotsPerDay());
+            for (ScheduleEntry entry : candidates(dayStart, dayEnd)) {
+                if (entry.overlaps(dayStart, dayEnd)) {
+                    int from = grid.slotAt(day, entry.start());
+                    int to = grid.slotEndingAt(day, entry.end());
+                    if (from < to) {
+                        busy.set(from, to);
+                    }
+                }
+            }
+            if (busy.isEmpty()) {
+                busyDays.remove(day);
+            } else {
+                busyDays.put(day, busy);
+            }
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.clinic.appointment.schedule;
+
+import com.clinic.appointment.repository.AppointmentRepository;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+/**
+ * In-memory per-doctor index of active (SCHEDULED/CONFIRMED) appointment intervals,
+ * used to answer "is [start, end) free?" and "which slots are open on this day?"
+ * without a database round trip. Built lazily from the database on first use and
+ * kept in sync by AppointmentService once its transactions commit, and with changes
+ * committed elsewhere by ScheduleIndexRefresher, which tails the change log. Until
+ * those arrive a conflict reported here is re-checked against the database, and
+ * corrected with {@link #refresh}, before a booking is refused.
+ */
+@Component
+@RequiredArgsConstructor
+@Slf4j
+public class DoctorScheduleIndex {
+    
+    private final AppointmentRepository appointmentRepository;
+    private final SlotGrid slotGrid;
+    
+    private final Map<Integer, DoctorSchedule> schedules = new ConcurrentHashMap<>();
+    private final Map<Long, ScheduleEntry> entriesById = new ConcurrentHashMap<>();
+    private final ReentrantLock loadLock = new ReentrantLock();
+    private volatile boolean loaded;
+    
+    public boolean isFree(Integer doctorId, LocalDateTime start, LocalDateTime end, Long ignoredAppointmentId) {
+        ensureLoaded();
+        DoctorSchedule schedule = schedules.get(doctorId);
+        if (schedule == null) {
+            return true;
+        }
+        synchronized (schedule) {
+            return schedule.isFree(start, end, ignoredAppointmentId);
+        }
+    }
+    
+    /**
+     * Copy of the doctor's busy-slot bitmap for the day, one bit per slot of the SlotGrid
+     */
+    public BitSet busySlots(Integer doctorId, LocalDate date) {
+        ensureLoaded();
+        DoctorSchedule schedule = doctorId == null ? null : schedules.get(doctorId);
+        if (schedule == null) {
+            return new BitSet(slotGrid.slotsPerDay());
+        }
+        synchronized (schedule) {
+            return schedule.busySlots(date);
+        }
+    }
+    
+    /**
+     * Insert or move the interval of an active appointment
+     */
+    public void put(ScheduleEntry entry) {
+        ensureLoaded();
+        remove(entry.appointmentId());
+        DoctorSchedule schedule = schedules.computeIfAbsent(entry.doctorId(), id -> new DoctorSchedule(slotGrid));
+        synchronized (schedule) {
+            schedule.add(entry);
+        }
+        entriesById.put(entry.appointmentId(), entry);
+    }
+    
+    public void remove(Long appointmentId) {
+        ensureLoaded();
+        ScheduleEntry entry = entriesById.remove(appointmentId);
+        if (entry == null) {
+            return;
+        }
+        DoctorSchedule schedule = schedules.get(entry.doctorId());
+        if (schedule != null) {
+            synchronized (schedule) {
+                schedule.remove(entry);
+            }
+        }
+    }
+    
+    /**
+     * Replace the doctor's intervals overlapping [start, end) with the given ones, freshly
+     * read from the database. Drops bookings that were cancelled, moved or deleted without
+     * this node seeing the commit.
+     */
+    public void refresh(Integer doctorId, LocalDateTime start, LocalDateTime end, List<ScheduleEntry> current) {
+        ensureLoaded();
+        Set<Long> currentIds = current.stream()
+            .map(ScheduleEntry::appointmentId)
+            .collect(Collectors.toSet());
+        DoctorSchedule schedule = schedules.get(doctorId);
+        if (schedule != null) {
+            List<ScheduleEntry> stale;
+            synchronized (schedule) {
+                stale = schedule.overlapping(start, end);
+                stale.removeIf(entry -> currentIds.contains(entry.appointmentId()));
+                stale.forEach(schedule::remove);
+            }
+            stale.forEach(entry -> entriesById.remove(entry.appointmentId(), entry));
+            if (!stale.isEmpty()) {
+                log.debug("Evicted {} stale intervals of doctor {} from the schedule index", stale.size(), doctorId);
+            }
+        }
+        current.forEach(this::put);
+    }
+    
+    /**
+     * Drop intervals that ended before the cutoff; they can no longer conflict with a booking
+     */
+    public void evictEndedBefore(LocalDateTime cutoff) {
+        entriesById.values().removeIf(entry -> !entry.end().isAfter(cutoff));
+        schedules.values().forEach(schedule -> {
+            synchronized (schedule) {
+                schedule.evictEndedBefore(cutoff);
+            }
+        });
+    }
+    
+    /**
+     * Forget every interval; the next lookup reloads the index from the database
+     */
+    public void invalidate() {
+        loadLock.lock();
+        try {
+            loaded = false;
+            schedules.clear();
+            entriesById.clear();
+        } finally {
+            loadLock.unlock();
+        }
+    }
+    
+    private void ensureLoaded() {
+        if (loaded) {
+            return;
+        }
+        // A lock rather than synchronized, so a virtual thread waiting on the load does not pin its carrier
+        loadLock.lock();
+        try {
+            if (loaded) {
+                return;
+            }
+            List<ScheduleEntry> active = appointmentRepository.findActiveScheduleEntries(LocalDateTime.now().minusDays(1));
+            for (ScheduleEntry entry : active) {
+                schedules.computeIfAbsent(entry.doctorId(), id -> new DoctorSchedule(slotGrid)).add(entry);
+                entriesById.put(entry.appointmentId(), entry);
+            }
+            loaded = true;
+            log.info("Loaded {} active appointment intervals for {} doctors into the schedule index",
+                active.size(), schedules.size());
+        } finally {
+            loadLock.unlock();
+        }
+    }
+}
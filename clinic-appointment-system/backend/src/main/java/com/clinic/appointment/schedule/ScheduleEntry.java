@@ -0,0 +1,17 @@
+package com.clinic.appointment.schedule;
+
+import java.time.LocalDateTime;
+
+/**
+ * Half-open booked interval [start, end) of one active appointment
+ */
+public record ScheduleEntry(Long appointmentId, Integer doctorId, LocalDateTime start, LocalDateTime end) {
+    
+    public ScheduleEntry(Long appointmentId, Integer doctorId, LocalDateTime start, Integer durationMinutes) {
+        this(appointmentId, doctorId, start, start.plusMinutes(durationMinutes));
+    }
+    
+    public boolean overlaps(LocalDateTime otherStart, LocalDateTime otherEnd) {
+        return start.isBefore(otherEnd) && otherStart.isBefore(end);
+    }
+}
@@ -0,0 +1,81 @@
+package com.clinic.appointment.schedule;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+
+/**
+ * Fixed grid of bookable slots within clinic opening hours, one bit per slot in the
+ * per-day availability bitmaps
+ */
+@Component
+public class SlotGrid {
+    
+    private final LocalTime opensAt;
+    private final LocalTime closesAt;
+    private final int slotMinutes;
+    private final int slotsPerDay;
+    
+    public SlotGrid(@Value("${clinic.availability.opens-at:08:00}") String opensAt,
+                    @Value("${clinic.availability.closes-at:20:00}") String closesAt,
+                    @Value("${clinic.availability.slot-minutes:15}") int slotMinutes) {
+        this.opensAt = LocalTime.parse(opensAt);
+        this.closesAt = LocalTime.parse(closesAt);
+        this.slotMinutes = slotMinutes;
+        this.slotsPerDay = (int) (Duration.between(this.opensAt, this.closesAt).toMinutes() / slotMinutes);
+    }
+    
+    public int slotsPerDay() {
+        return slotsPerDay;
+    }
+    
+    public int slotMinutes() {
+        return slotMinutes;
+    }
+    
+    public LocalTime opensAt() {
+        return opensAt;
+    }
+    
+    public LocalTime closesAt() {
+        return closesAt;
+    }
+    
+    /**
+     * Whether a visit starting at the time starts and ends within that day's opening hours
+     */
+    public boolean withinOpeningHours(LocalDateTime start, int durationMinutes) {
+        LocalDate date = start.toLocalDate();
+        return !start.isBefore(date.atTime(opensAt))
+            && !start.plusMinutes(durationMinutes).isAfter(date.atTime(closesAt));
+    }
+    
+    public LocalDateTime slotStart(LocalDate date, int slot) {
+        return date.atTime(opensAt).plusMinutes((long) slot * slotMinutes);
+    }
+    
+    /**
+     * Index of the slot of the given day containing the time, clamped to [0, slotsPerDay]
+     */
+    public int slotAt(LocalDate date, LocalDateTime time) {
+        long minutes = Duration.between(date.atTime(opensAt), time).toMinutes();
+        return (int) Math.max(0, Math.min(slotsPerDay, Math.floorDiv(minutes, slotMinutes)));
+    }
+    
+    /**
+     * Index one past the last slot of the given day that [.., time) reaches into,
+     * clamped to [0, slotsPerDay]
+     */
+    public int slotEndingAt(LocalDate date, LocalDateTime time) {
+        long minutes = Duration.between(date.atTime(opensAt), time).toMinutes();
+        return (int) Math.max(0, Math.min(slotsPerDay, Math.floorDiv(minutes + slotMinutes - 1, slotMinutes)));
+    }
+    
+    public int slotsFor(int durationMinutes) {
+        return (durationMinutes + slotMinutes - 1) / slotMinutes;
+    }
+}
@@ -0,0 +1,89 @@
+package com.clinic.appointment.scheduler;
+
+import com.clinic.appointment.config.RetentionProperties;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.persistence.Tuple;
+import jakarta.persistence.TupleElement;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes purged appointment rows to gzip-compressed NDJSON files, one file per purge run and status
+ */
+@Component
+@RequiredArgsConstructor
+public class AppointmentArchiver {
+    
+    private static final DateTimeFormatter FILE_TIMESTAMP = DateTimeFormatter.ofPattern("yyyyMMdd-HHmmss");
+    
+    private final RetentionProperties retentionProperties;
+    private final ObjectMapper objectMapper;
+    
+    public Archive open(String label) {
+        try {
+            Path directory = Path.of(retentionProperties.getArchiveDirectory());
+            Files.createDirectories(directory);
+            Path file = directory.resolve("appointments-" + label + "-" + LocalDateTime.now().format(FILE_TIMESTAMP) + ".ndjson.gz");
+            // Sync-flush mode lets every batch reach the file before its delete commits
+            GZIPOutputStream gzip = new GZIPOutputStream(Files.newOutputStream(file), true);
+            return new Archive(file, new BufferedWriter(new OutputStreamWriter(gzip, StandardCharsets.UTF_8)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open appointment archive", e);
+        }
+    }
+    
+    public class Archive implements AutoCloseable {
+        
+        private final Path file;
+        private final Writer writer;
+        
+        private Archive(Path file, Writer writer) {
+            this.file = file;
+            this.writer = writer;
+        }
+        
+        public Path getFile() {
+            return file;
+        }
+        
+        public void write(List<Tuple> rows) {
+            try {
+                for (Tuple row : rows) {
+                    Map<String, Object> record = new LinkedHashMap<>();
+                    for (TupleElement<?> element : row.getElements()) {
+                        record.put(element.getAlias(), row.get(element));
+                    }
+                    writer.write(objectMapper.writeValueAsString(record));
+                    writer.write('\n');
+                }
+                writer.flush();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not write appointment archive", e);
+            }
+        }
+        
+        @Override
+        public void close() {
+            try {
+                writer.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException("Could not close appointment archive", e);
+            }
+        }
+    }
+}
@@ -1,62 +1,226 @@
 package com.clinic.appointment.scheduler;
 
-import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.config.RetentionProperties;
+import com.clinic.appointment.event.AppointmentEvent;
+import com.clinic.appointment.event.AppointmentEventBus;
 import com.clinic.appointment.model.Appointment.AppointmentStatus;
 import com.clinic.appointment.repository.AppointmentRepository;
-import lombok.RequiredArgsConstructor;
+import com.clinic.appointment.schedule.DoctorScheduleIndex;
+import com.clinic.appointment.service.AppointmentSyncService;
+import jakarta.persistence.Tuple;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.List;
 
+/**
+ * Cleanup jobs, run once per fire time across all backend nodes by {@link ClusterJobRunner}.
+ * The NO_SHOW sweep and retention purges are sharded by appointment id, so the nodes split
+ * the rows between them.
+ */
 @Component
-@RequiredArgsConstructor
 @Slf4j
 public class AppointmentCleanupScheduler {
     
+    private static final String NO_SHOW_CRON = "0 0 2 * * ?";
+    private static final String PURGE_CRON = "0 0 */6 * * ?";
+    private static final String PRUNE_CHANGE_LOG_CRON = "0 15 3 * * ?";
+    // Predates every appointment; an unbounded NO_SHOW sweep starts here
+    private static final LocalDateTime NO_LOWER_BOUND = LocalDateTime.of(1970, 1, 1, 0, 0);
+    
     private final AppointmentRepository appointmentRepository;
+    private final DoctorScheduleIndex scheduleIndex;
+    private final RetentionProperties retentionProperties;
+    private final AppointmentArchiver appointmentArchiver;
+    private final AppointmentEventBus eventBus;
+    private final AppointmentSyncService syncService;
+    private final ClusterJobRunner jobRunner;
+    private final TransactionTemplate transactionTemplate;
+    private final int batchSize;
+    private final int noShowLookbackDays;
+    private final int syncRetentionDays;
+    private final ClusterJob noShowJob;
+    private final List<ClusterJob> purgeJobs;
+    private final ClusterJob pruneChangeLogJob;
+    
+    public AppointmentCleanupScheduler(AppointmentRepository appointmentRepository,
+                                       DoctorScheduleIndex scheduleIndex,
+                                       RetentionProperties retentionProperties,
+                                       AppointmentArchiver appointmentArchiver,
+                                       AppointmentEventBus eventBus,
+                                       AppointmentSyncService syncService,
+                                       ClusterJobRunner jobRunner,
+                                       PlatformTransactionManager transactionManager,
+                                       @Value("${clinic.cleanup.batch-size:1000}") int batchSize,
+                                       @Value("${clinic.cleanup.no-show-lookback-days:31}") int noShowLookbackDays,
+                                       @Value("${clinic.sync.retention-days:30}") int syncRetentionDays) {
+        this.appointmentRepository = appointmentRepository;
+        this.scheduleIndex = scheduleIndex;
+        this.retentionProperties = retentionProperties;
+        this.appointmentArchiver = appointmentArchiver;
+        this.eventBus = eventBus;
+        this.syncService = syncService;
+        this.jobRunner = jobRunner;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.batchSize = batchSize;
+        this.noShowLookbackDays = noShowLookbackDays;
+        this.syncRetentionDays = syncRetentionDays;
+        this.noShowJob = jobRunner.register(new ClusterJob("mark-no-show", AppointmentStatus.NO_SHOW.name(),
+            NO_SHOW_CRON,
+            (startedAt, previousStartedAt) -> appointmentRepository.findNoShowIdRange(
+                noShowSince(startedAt, previousStartedAt), startedAt),
+            this::markNoShowShard));
+        this.purgeJobs = retentionProperties.getDays().entrySet().stream()
+            .map(retention -> jobRunner.register(new ClusterJob("purge", retention.getKey().name(), PURGE_CRON,
+                (startedAt, previousStartedAt) -> appointmentRepository.findExpiredIdRange(retention.getKey().name(),
+                    startedAt.minusDays(retention.getValue())),
+                shard -> purgeShard(retention.getKey(), retention.getValue(), shard))))
+            .toList();
+        this.pruneChangeLogJob = jobRunner.register(new ClusterJob("prune-change-log", "ALL", PRUNE_CHANGE_LOG_CRON,
+            null, this::pruneChangeLogShard));
+    }
     
     /**
-     * Run every day at 2:00 AM to mark past scheduled appointments as NO_SHOW
+     * Run every day at 2:00 AM to mark past scheduled appointments as NO_SHOW.
+     * Rows are updated in the database in bounded batches, each in its own short
+     * transaction, so memory stays constant and row locks are released quickly.
+     * Only the last clinic.cleanup.no-show-lookback-days are swept, which keeps the scan
+     * to the current and previous monthly partitions, unless no sweep has finished within
+     * that window; then the sweep reaches back to the oldest booking. Each batch is pushed to open
+     * appointment streams on this node once it has committed.
      */
-    @Scheduled(cron = "0 0 2 * * ?")
-    @Transactional
+    @Scheduled(cron = NO_SHOW_CRON)
     public void markPastAppointmentsAsNoShow() {
         log.info("Starting scheduled cleanup of past appointments");
+        jobRunner.run(noShowJob);
+        // The booking index is per node, so every node evicts whether or not it swept
+        scheduleIndex.evictEndedBefore(LocalDateTime.now());
+    }
+    
+    /**
+     * Run every 6 hours to purge finished appointments past their retention
+     * (clinic.retention.days, CANCELLED after 90 days by default). Rows are deleted in
+     * the database in bounded batches via the (status, updated_at) index and, when
+     * archiving is enabled, written to a compressed archive before each batch commits.
+     */
+    @Scheduled(cron = PURGE_CRON)
+    public void purgeExpiredAppointments() {
+        purgeJobs.forEach(jobRunner::run);
+    }
+    
+    /**
+     * Run every day at 3:15 AM to prune the appointment change log behind delta sync
+     * (clinic.sync.retention-days, 30 by default). Sync tokens older than what was pruned
+     * are refused with 410 from then on, and those clients reload their full list.
+     */
+    @Scheduled(cron = PRUNE_CHANGE_LOG_CRON)
+    public void pruneChangeLog() {
+        jobRunner.run(pruneChangeLogJob);
+    }
+    
+    private int markNoShowShard(JobShard shard) {
+        long startedAt = System.currentTimeMillis();
+        LocalDateTime now = shard.startedAt();
+        LocalDateTime since = noShowSince(now, shard.previousStartedAt());
+        int total = 0;
+        int batches = 0;
+        int updated;
+        do {
+            List<Tuple> marked = transactionTemplate.execute(status -> appointmentRepository.markPastAppointmentsAsNoShow(
+                since, now, shard.fromId(), shard.toId(), batchSize));
+            eventBus.publishAll(marked.stream().map(this::noShowEvent).toList());
+            updated = marked.size();
+            total += updated;
+            batches++;
+        } while (updated == batchSize && shard.renewLease());
         
-        LocalDateTime now = LocalDateTime.now();
-        List<Appointment> pastAppointments = appointmentRepository.findPastScheduledAppointments(now);
-        
-        int count = 0;
-        for (Appointment appointment : pastAppointments) {
-            appointment.setStatus(AppointmentStatus.NO_SHOW);
-            appointmentRepository.save(appointment);
-            count++;
-        }
-        
-        log.info("Marked {} past appointments as NO_SHOW", count);
+        log.info("Marked {} past appointments as NO_SHOW in {} batches of shard {} ({} ms)", total, batches,
+            shard.index(), System.currentTimeMillis() - startedAt);
+        return total;
     }
     
     /**
-     * Run every 6 hours to clean up old cancelled appointments (older than 90 days)
+     * Start of the lookback window, or no bound at all when the last finished sweep started
+     * before the window (or is unknown), since bookings that turned past in between were
+     * never swept. The partial index on active appointments keeps the unbounded scan cheap.
      */
-    @Scheduled(cron = "0 0 */6 * * ?")
-    @Transactional
-    public void cleanupOldCancelledAppointments() {
-        log.info("Starting cleanup of old cancelled appointments");
+    private LocalDateTime noShowSince(LocalDateTime startedAt, LocalDateTime previousStartedAt) {
+        LocalDateTime windowStart = startedAt.minusDays(noShowLookbackDays);
+        return previousStartedAt != null && !previousStartedAt.isBefore(windowStart) ? windowStart : NO_LOWER_BOUND;
+    }
+    
+    private int purgeShard(AppointmentStatus status, int days, JobShard shard) {
+        log.info("Starting purge of {} appointments older than {} days in shard {}", status, days, shard.index());
         
-        LocalDateTime cutoffDate = LocalDateTime.now().minusDays(90);
-        List<Appointment> oldCancelled = appointmentRepository.findAll().stream()
-            .filter(a -> a.getStatus() == AppointmentStatus.CANCELLED 
-                && a.getUpdatedAt().isBefore(cutoffDate))
-            .toList();
+        long startedAt = System.currentTimeMillis();
+        LocalDateTime cutoff = shard.startedAt().minusDays(days);
+        int total = retentionProperties.isArchiveEnabled()
+            ? purgeWithArchive(status, cutoff, shard)
+            : purge(status, cutoff, shard);
         
-        int count = oldCancelled.size();
-        appointmentRepository.deleteAll(oldCancelled);
+        log.info("Deleted {} {} appointments in shard {} ({} ms)", total, status, shard.index(),
+            System.currentTimeMillis() - startedAt);
+        return total;
+    }
+    
+    private int pruneChangeLogShard(JobShard shard) {
+        long startedAt = System.currentTimeMillis();
+        LocalDateTime cutoff = shard.startedAt().minusDays(syncRetentionDays);
+        int total = 0;
+        int deleted;
+        do {
+            deleted = syncService.pruneChanges(cutoff, batchSize);
+            total += deleted;
+        } while (deleted == batchSize && shard.renewLease());
         
-        log.info("Deleted {} old cancelled appointments", count);
+        log.info("Pruned {} appointment change log rows older than {} days ({} ms)", total, syncRetentionDays,
+            System.currentTimeMillis() - startedAt);
+        return total;
+    }
+    
+    private AppointmentEvent noShowEvent(Tuple row) {
+        return new AppointmentEvent(AppointmentEvent.Type.UPDATED,
+            row.get("id", Number.class).longValue(),
+            row.get("user_id", Number.class).longValue(),
+            row.get("doctor_id", Number.class).intValue(),
+            row.get("appointment_date", Timestamp.class).toLocalDateTime(),
+            AppointmentStatus.NO_SHOW);
+    }
+    
+    private int purge(AppointmentStatus status, LocalDateTime cutoff, JobShard shard) {
+        int total = 0;
+        int deleted;
+        do {
+            deleted = transactionTemplate.execute(tx -> appointmentRepository.deleteExpiredBatch(
+                status.name(), cutoff, shard.fromId(), shard.toId(), batchSize));
+            total += deleted;
+        } while (deleted == batchSize && shard.renewLease());
+        return total;
+    }
+    
+    private int purgeWithArchive(AppointmentStatus status, LocalDateTime cutoff, JobShard shard) {
+        int total = 0;
+        int deleted;
+        // One file per shard, so shards purged in the same second do not overwrite each other
+        String label = status.name().toLowerCase() + "-" + shard.index();
+        try (AppointmentArchiver.Archive archive = appointmentArchiver.open(label)) {
+            do {
+                deleted = transactionTemplate.execute(tx -> {
+                    List<Tuple> rows = appointmentRepository.deleteExpiredBatchReturningRows(
+                        status.name(), cutoff, shard.fromId(), shard.toId(), batchSize);
+                    archive.write(rows);
+                    return rows.size();
+                });
+                total += deleted;
+            } while (deleted == batchSize && shard.renewLease());
+            log.info("Archived {} {} appointments to {}", total, status, archive.getFile());
+        }
+        return total;
     }
 }
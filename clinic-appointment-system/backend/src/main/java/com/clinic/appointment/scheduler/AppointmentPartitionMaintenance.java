@@ -0,0 +1,108 @@
+package com.clinic.appointment.scheduler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.YearMonth;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Keeps the monthly partitions of appointments in step with the calendar: partitions are
+ * created monthsAhead months in advance, and partitions older than retentionMonths are
+ * detached into the archive schema. Each partition change runs in its own short
+ * transaction through the functions defined in V4__partition_appointments_by_month.sql.
+ */
+@Component
+@Slf4j
+public class AppointmentPartitionMaintenance {
+    
+    private static final Pattern PARTITION_NAME = Pattern.compile("appointments_p(\\d{4})(\\d{2})");
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final int monthsAhead;
+    private final int retentionMonths;
+    private final String archiveSchema;
+    private final Counter created;
+    private final Counter detached;
+    
+    public AppointmentPartitionMaintenance(JdbcTemplate jdbcTemplate,
+                                           MeterRegistry meterRegistry,
+                                           @Value("${clinic.partitions.enabled:true}") boolean enabled,
+                                           @Value("${clinic.partitions.months-ahead:12}") int monthsAhead,
+                                           @Value("${clinic.partitions.retention-months:24}") int retentionMonths,
+                                           @Value("${clinic.partitions.archive-schema:appointments_archive}") String archiveSchema) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.monthsAhead = monthsAhead;
+        this.retentionMonths = retentionMonths;
+        this.archiveSchema = archiveSchema;
+        this.created = Counter.builder("clinic.partitions.created")
+            .description("Monthly appointment partitions created")
+            .register(meterRegistry);
+        this.detached = Counter.builder("clinic.partitions.detached")
+            .description("Monthly appointment partitions detached into the archive schema")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Runs on startup, so a node that was down over a month boundary catches up, and then
+     * daily at 1:30 AM, ahead of the NO_SHOW sweep
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(cron = "0 30 1 * * ?")
+    public void maintainPartitions() {
+        if (!enabled) {
+            return;
+        }
+        YearMonth current = YearMonth.now();
+        
+        int createdNow = 0;
+        for (int i = 0; i <= monthsAhead; i++) {
+            YearMonth month = current.plusMonths(i);
+            Boolean wasCreated = jdbcTemplate.queryForObject(
+                "SELECT appointments_create_partition(?)", Boolean.class, month.atDay(1));
+            if (Boolean.TRUE.equals(wasCreated)) {
+                createdNow++;
+                log.info("Created appointment partition for {}", month);
+            }
+        }
+        created.increment(createdNow);
+        
+        int detachedNow = 0;
+        if (retentionMonths > 0) {
+            YearMonth oldestKept = current.minusMonths(retentionMonths);
+            for (String partition : attachedPartitions()) {
+                Matcher matcher = PARTITION_NAME.matcher(partition);
+                if (!matcher.matches()) {
+                    continue;
+                }
+                YearMonth month = YearMonth.of(Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2)));
+                if (month.isBefore(oldestKept)) {
+                    jdbcTemplate.queryForObject("SELECT appointments_archive_partition(?, ?)", Object.class,
+                        partition, archiveSchema);
+                    detachedNow++;
+                    log.info("Detached appointment partition {} into schema {}", partition, archiveSchema);
+                }
+            }
+        }
+        detached.increment(detachedNow);
+        
+        log.info("Partition maintenance done: {} created, {} detached", createdNow, detachedNow);
+    }
+    
+    private List<String> attachedPartitions() {
+        return jdbcTemplate.queryForList(
+            "SELECT c.relname FROM pg_inherits i JOIN pg_class c ON c.oid = i.inhrelid " +
+            "WHERE i.inhparent = 'appointments'::regclass ORDER BY c.relname", String.class);
+    }
+}
@@ -0,0 +1,38 @@
+package com.clinic.appointment.scheduler;
+
+import com.clinic.appointment.repository.IdRange;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+/**
+ * A job run once per cron fire time across all nodes by {@link ClusterJobRunner}. Runs and
+ * metrics are keyed by name and status. A job with bounds is split into shards by id
+ * range so the nodes share its work; without, it runs as one shard.
+ */
+public record ClusterJob(String name, String status, String cron, Bounds bounds, ShardTask task) {
+    
+    @FunctionalInterface
+    public interface Bounds {
+        
+        /**
+         * Ids the run started at startedAt will touch, or empty if there is nothing to do.
+         * previousStartedAt is the start of the job's last finished run, or null if none is known.
+         */
+        Optional<IdRange> find(LocalDateTime startedAt, LocalDateTime previousStartedAt);
+    }
+    
+    @FunctionalInterface
+    public interface ShardTask {
+        
+        /**
+         * Processes the rows of the shard and returns how many were handled. Long tasks call
+         * {@link JobShard#renewLease()} between batches and stop once it returns false.
+         */
+        int run(JobShard shard);
+    }
+    
+    String key() {
+        return name + ":" + status;
+    }
+}
@@ -0,0 +1,213 @@
+package com.clinic.appointment.scheduler;
+
+import com.clinic.appointment.scheduler.SchedulerLeaseStore.ActiveRun;
+import com.clinic.appointment.scheduler.SchedulerLeaseStore.JobState;
+import com.clinic.appointment.scheduler.SchedulerLeaseStore.ShardClaim;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.scheduling.support.CronExpression;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs each {@link ClusterJob} once per cron fire time however many backend nodes fire it.
+ * The first node in for a fire time starts the run and splits it into clinic.scheduler.shards
+ * id ranges; every node then leases shards one at a time, FOR UPDATE SKIP LOCKED, until none
+ * are left, so more nodes finish a run sooner instead of repeating it. All coordination is
+ * in PostgreSQL (V9__scheduler_leases.sql).
+ * <p>
+ * A shard whose node dies is released when its lease of clinic.scheduler.lease-seconds
+ * lapses, and every clinic.scheduler.catch-up-interval-ms, as well as on startup, each node
+ * resumes such shards and starts one run for fire times missed while every node was down.
+ * With clinic.scheduler.cluster.enabled=false every node runs each job locally as a single
+ * shard. Local runs are still recorded in scheduler_jobs, so the previous run of a job is
+ * known after a restart.
+ */
+@Component
+@Slf4j
+public class ClusterJobRunner {
+    
+    // Far enough back to find the latest fire time of any cron that fires at least monthly
+    private static final int FIRE_TIME_LOOKBACK_DAYS = 31;
+    
+    private final SchedulerLeaseStore store;
+    private final TransactionTemplate transactionTemplate;
+    private final MeterRegistry meterRegistry;
+    private final boolean clusterEnabled;
+    private final int shards;
+    private final int leaseSeconds;
+    private final String nodeId;
+    private final List<ClusterJob> jobs = new CopyOnWriteArrayList<>();
+    
+    public ClusterJobRunner(SchedulerLeaseStore store,
+                            PlatformTransactionManager transactionManager,
+                            MeterRegistry meterRegistry,
+                            @Value("${clinic.scheduler.cluster.enabled:true}") boolean clusterEnabled,
+                            @Value("${clinic.scheduler.shards:8}") int shards,
+                            @Value("${clinic.scheduler.lease-seconds:120}") int leaseSeconds,
+                            @Value("${clinic.scheduler.node-id:}") String nodeId) {
+        this.store = store;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.meterRegistry = meterRegistry;
+        this.clusterEnabled = clusterEnabled;
+        this.shards = shards;
+        this.leaseSeconds = leaseSeconds;
+        this.nodeId = nodeId.isBlank() ? ManagementFactory.getRuntimeMXBean().getName() : nodeId;
+    }
+    
+    /**
+     * Makes the job known to catch-up; its scheduled trigger still calls {@link #run}
+     */
+    public ClusterJob register(ClusterJob job) {
+        jobs.add(job);
+        return job;
+    }
+    
+    /**
+     * Starts or joins the run for the job's latest fire time and works through its shards.
+     * Returns the rows handled on this node.
+     */
+    public int run(ClusterJob job) {
+        long startedAt = System.currentTimeMillis();
+        if (!clusterEnabled) {
+            LocalDateTime now = LocalDateTime.now();
+            LocalDateTime previousStartedAt = store.lastFinishedStart(job.key()).orElse(null);
+            int rows = job.task().run(new JobShard(0, Long.MIN_VALUE, Long.MAX_VALUE, now, previousStartedAt,
+                () -> true));
+            store.recordLocalRun(job.key(), now, nodeId, rows);
+            recordRun(job, "local", rows, 1, System.currentTimeMillis() - startedAt);
+            return rows;
+        }
+        
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime lastRunAt = store.find(job.key()).map(JobState::runAt).orElse(null);
+        LocalDateTime runAt = latestFireTime(CronExpression.parse(job.cron()),
+            lastRunAt != null ? lastRunAt : now.minusDays(FIRE_TIME_LOOKBACK_DAYS), now);
+        if (runAt == null) {
+            runAt = lastRunAt;
+        }
+        if (runAt == null) {
+            return 0;
+        }
+        LocalDateTime fireTime = runAt;
+        Optional<ActiveRun> active = transactionTemplate.execute(tx ->
+            store.begin(job.key(), fireTime, nodeId, shards, job.bounds()));
+        if (active.isEmpty()) {
+            countRun(job, "skipped");
+            log.info("Skipping {} {}: the run for {} is already done", job.name(), job.status(), fireTime);
+            return 0;
+        }
+        ActiveRun run = active.get();
+        
+        int rows = 0;
+        int shardsDone = 0;
+        Optional<ShardClaim> claim;
+        while ((claim = store.claim(job.key(), run.runAt(), nodeId, leaseSeconds)).isPresent()) {
+            ShardClaim shard = claim.get();
+            int handled = job.task().run(new JobShard(shard.shard(), shard.fromId(), shard.toId(), run.startedAt(),
+                run.previousStartedAt(), () -> store.renew(job.key(), run.runAt(), shard.shard(), nodeId, leaseSeconds)));
+            rows += handled;
+            if (store.complete(job.key(), run.runAt(), shard.shard(), nodeId, handled)) {
+                shardsDone++;
+            } else {
+                log.warn("Lease on shard {} of {} {} lapsed; another node completes it", shard.shard(), job.name(),
+                    job.status());
+            }
+        }
+        
+        store.finish(job.key(), run.runAt()).ifPresent(summary ->
+            log.info("Run of {} {} for {} done: {} rows in {} ms across all nodes", job.name(), job.status(),
+                run.runAt(), summary.rows(), Duration.between(summary.startedAt(), summary.completedAt()).toMillis()));
+        recordRun(job, run.startedHere() ? "started" : "joined", rows, shardsDone, System.currentTimeMillis() - startedAt);
+        return rows;
+    }
+    
+    /**
+     * Runs on startup and then every clinic.scheduler.catch-up-interval-ms: resumes runs with
+     * unclaimed or abandoned shards, and starts runs for fire times no node was up for. Jobs
+     * that have never run are left to their schedule.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    @Scheduled(fixedDelayString = "${clinic.scheduler.catch-up-interval-ms:60000}",
+        initialDelayString = "${clinic.scheduler.catch-up-interval-ms:60000}")
+    public void catchUp() {
+        if (!clusterEnabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        for (ClusterJob job : jobs) {
+            try {
+                Optional<JobState> state = store.find(job.key());
+                if (state.isEmpty() || state.get().runAt() == null) {
+                    continue;
+                }
+                boolean abandoned = "RUNNING".equals(state.get().status()) && state.get().claimable();
+                boolean missed = latestFireTime(CronExpression.parse(job.cron()), state.get().runAt(), now) != null;
+                if (abandoned || missed) {
+                    log.info("Catching up on {} {}: {}", job.name(), job.status(),
+                        missed ? "missed run after " + state.get().runAt() : "unfinished shards of " + state.get().runAt());
+                    run(job);
+                }
+            } catch (RuntimeException e) {
+                log.warn("Catch-up of {} {} failed: {}", job.name(), job.status(), e.toString());
+            }
+        }
+    }
+    
+    /**
+     * Publishes clinic.scheduler.job.duration, clinic.scheduler.job.rows and
+     * clinic.scheduler.job.shards for the work done on this node, tagged by job and status
+     */
+    private void recordRun(ClusterJob job, String role, int rows, int shardsDone, long elapsedMillis) {
+        countRun(job, role);
+        Timer.builder("clinic.scheduler.job.duration")
+            .tags("job", job.name(), "status", job.status())
+            .register(meterRegistry)
+            .record(elapsedMillis, TimeUnit.MILLISECONDS);
+        Counter.builder("clinic.scheduler.job.rows")
+            .tags("job", job.name(), "status", job.status())
+            .register(meterRegistry)
+            .increment(rows);
+        Counter.builder("clinic.scheduler.job.shards")
+            .tags("job", job.name(), "status", job.status())
+            .register(meterRegistry)
+            .increment(shardsDone);
+    }
+    
+    /**
+     * Publishes clinic.scheduler.job.runs tagged by job, status and this node's role in the
+     * run: started, joined, skipped because it was already done, or local
+     */
+    private void countRun(ClusterJob job, String role) {
+        Counter.builder("clinic.scheduler.job.runs")
+            .tags("job", job.name(), "status", job.status(), "role", role)
+            .register(meterRegistry)
+            .increment();
+    }
+    
+    /**
+     * Latest fire time of the cron after the given time and no later than now, or null
+     */
+    private static LocalDateTime latestFireTime(CronExpression cron, LocalDateTime after, LocalDateTime now) {
+        LocalDateTime latest = null;
+        for (LocalDateTime next = cron.next(after); next != null && !next.isAfter(now); next = cron.next(next)) {
+            latest = next;
+        }
+        return latest;
+    }
+}
@@ -0,0 +1,59 @@
+package com.clinic.appointment.scheduler;
+
+import java.time.LocalDateTime;
+import java.util.function.BooleanSupplier;
+
+/**
+ * One shard of a {@link ClusterJob} run, leased to this node: the ids in [fromId, toId).
+ * startedAt and previousStartedAt are the same for every shard of the run, so cutoffs
+ * derived from them agree across nodes.
+ */
+public final class JobShard {
+    
+    private final int index;
+    private final long fromId;
+    private final long toId;
+    private final LocalDateTime startedAt;
+    private final LocalDateTime previousStartedAt;
+    private final BooleanSupplier leaseRenewal;
+    
+    JobShard(int index, long fromId, long toId, LocalDateTime startedAt, LocalDateTime previousStartedAt,
+             BooleanSupplier leaseRenewal) {
+        this.index = index;
+        this.fromId = fromId;
+        this.toId = toId;
+        this.startedAt = startedAt;
+        this.previousStartedAt = previousStartedAt;
+        this.leaseRenewal = leaseRenewal;
+    }
+    
+    public int index() {
+        return index;
+    }
+    
+    public long fromId() {
+        return fromId;
+    }
+    
+    public long toId() {
+        return toId;
+    }
+    
+    public LocalDateTime startedAt() {
+        return startedAt;
+    }
+    
+    /**
+     * Start of the job's last finished run, or null if none is known
+     */
+    public LocalDateTime previousStartedAt() {
+        return previousStartedAt;
+    }
+    
+    /**
+     * Extends the lease on this shard; false means it lapsed and another node has taken over
+     */
+    public boolean renewLease() {
+        return leaseRenewal.getAsBoolean();
+    }
+}
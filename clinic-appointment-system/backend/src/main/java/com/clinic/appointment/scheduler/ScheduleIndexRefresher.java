@@ -0,0 +1,126 @@
+package com.clinic.appointment.scheduler;
+
+import com.clinic.appointment.exception.SyncTokenExpiredException;
+import com.clinic.appointment.repository.AppointmentRepository;
+import com.clinic.appointment.repository.SyncToken;
+import com.clinic.appointment.schedule.DoctorScheduleIndex;
+import com.clinic.appointment.schedule.ScheduleEntry;
+import com.clinic.appointment.service.AppointmentSyncService;
+import com.clinic.appointment.service.AppointmentSyncService.ChangedAppointments;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Keeps this node's {@link DoctorScheduleIndex}, and with it the availability bitmaps, in
+ * step with bookings changed through other nodes, the cleanup jobs and cascading user
+ * deletes. Every clinic.schedule.refresh-interval-ms it reads the appointment change log
+ * (V6) past its position, on the primary, and re-reads the current state of each changed
+ * appointment into the index. Every node reads the whole log, unlike the outbox, whose
+ * events go to one node each. Changes are re-read rather than replayed, so seeing this
+ * node's own commits again is harmless.
+ */
+@Component
+@Slf4j
+public class ScheduleIndexRefresher {
+    
+    private static final int BATCH_SIZE = 500;
+    
+    private final AppointmentSyncService syncService;
+    private final AppointmentRepository appointmentRepository;
+    private final DoctorScheduleIndex scheduleIndex;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Counter applied;
+    private volatile SyncToken position;
+    
+    public ScheduleIndexRefresher(AppointmentSyncService syncService,
+                                  AppointmentRepository appointmentRepository,
+                                  DoctorScheduleIndex scheduleIndex,
+                                  PlatformTransactionManager transactionManager,
+                                  MeterRegistry meterRegistry,
+                                  @Value("${clinic.schedule.refresh.enabled:true}") boolean enabled) {
+        this.syncService = syncService;
+        this.appointmentRepository = appointmentRepository;
+        this.scheduleIndex = scheduleIndex;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.applied = Counter.builder("clinic.schedule.refresh.changes")
+            .description("Changed appointments re-read into the schedule index from the change log")
+            .register(meterRegistry);
+    }
+    
+    /**
+     * Takes the position first and drops anything loaded before it, so the index is
+     * rebuilt from a read that no change after the position can predate
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) {
+            return;
+        }
+        position = syncService.present();
+        scheduleIndex.invalidate();
+    }
+    
+    @Scheduled(fixedDelayString = "${clinic.schedule.refresh-interval-ms:1000}",
+        initialDelayString = "${clinic.schedule.refresh-interval-ms:1000}")
+    public void refresh() {
+        if (!enabled || position == null) {
+            return;
+        }
+        try {
+            boolean hasMore = true;
+            while (hasMore) {
+                hasMore = Boolean.TRUE.equals(transactionTemplate.execute(status -> applyNextBatch()));
+            }
+        } catch (SyncTokenExpiredException e) {
+            log.warn("Schedule index fell behind the pruned change log; reloading it");
+            start();
+        } catch (RuntimeException e) {
+            log.warn("Schedule index refresh failed: {}", e.toString());
+        }
+    }
+    
+    /**
+     * Position in the change log the index has caught up with, or null before start
+     */
+    SyncToken position() {
+        return position;
+    }
+    
+    /**
+     * Applies one batch of changes and returns whether more are waiting
+     */
+    private boolean applyNextBatch() {
+        ChangedAppointments changed = syncService.changedSince(position, BATCH_SIZE);
+        if (!changed.ids().isEmpty()) {
+            Map<Long, ScheduleEntry> active = appointmentRepository.findActiveScheduleEntriesByIds(changed.ids()).stream()
+                .collect(Collectors.toMap(ScheduleEntry::appointmentId, Function.identity()));
+            LocalDateTime now = LocalDateTime.now();
+            for (Long id : changed.ids()) {
+                ScheduleEntry entry = active.get(id);
+                if (entry != null && entry.end().isAfter(now)) {
+                    scheduleIndex.put(entry);
+                } else {
+                    scheduleIndex.remove(id);
+                }
+            }
+            applied.increment(changed.ids().size());
+        }
+        position = changed.next();
+        return changed.hasMore();
+    }
+}
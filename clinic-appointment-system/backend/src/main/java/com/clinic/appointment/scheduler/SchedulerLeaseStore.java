@@ -0,0 +1,184 @@
+package com.clinic.appointment.scheduler;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+
+/**
+ * Runs and shard leases of {@link ClusterJob}s in scheduler_jobs and scheduler_job_shards
+ * (V9__scheduler_leases.sql). Lease times are taken from the database clock, so nodes
+ * with drifting clocks still agree on when a lease has lapsed.
+ */
+@Repository
+@RequiredArgsConstructor
+class SchedulerLeaseStore {
+    
+    private static final String CLAIMABLE =
+        "completed_at IS NULL AND (owner IS NULL OR lease_until < LOCALTIMESTAMP)";
+    
+    private final JdbcTemplate jdbcTemplate;
+    
+    record JobState(LocalDateTime runAt, String status, boolean claimable) {
+    }
+    
+    record ActiveRun(LocalDateTime runAt, LocalDateTime startedAt, LocalDateTime previousStartedAt,
+                     boolean startedHere) {
+    }
+    
+    record ShardClaim(int shard, long fromId, long toId) {
+    }
+    
+    record RunSummary(long rows, LocalDateTime startedAt, LocalDateTime completedAt) {
+    }
+    
+    /**
+     * Latest run of the job, and whether any of its shards is unclaimed or has a lapsed lease
+     */
+    Optional<JobState> find(String job) {
+        return jdbcTemplate.query(
+            "SELECT j.run_at, j.status, EXISTS (SELECT 1 FROM scheduler_job_shards s " +
+            "WHERE s.job = j.job AND s.run_at = j.run_at AND " + CLAIMABLE + ") AS claimable " +
+            "FROM scheduler_jobs j WHERE j.job = ?",
+            (rs, rowNum) -> new JobState(toLocalDateTime(rs.getTimestamp("run_at")), rs.getString("status"),
+                rs.getBoolean("claimable")),
+            job).stream().findFirst();
+    }
+    
+    /**
+     * Starts the run for runAt unless the job already has a run that recent, splitting the
+     * ids returned by bounds into the given number of shards, or into a single shard if
+     * bounds is null. A finished run's start becomes the new run's previous start. Otherwise
+     * returns the latest run if it is still going, to be joined, or empty if it is done.
+     * Must be called in a transaction: the job row stays locked until commit, so the nodes
+     * firing together start one run between them and the others join it.
+     */
+    Optional<ActiveRun> begin(String job, LocalDateTime runAt, String nodeId, int shards,
+                              ClusterJob.Bounds bounds) {
+        jdbcTemplate.update("INSERT INTO scheduler_jobs (job) VALUES (?) ON CONFLICT DO NOTHING", job);
+        Map<String, Object> current = jdbcTemplate.queryForMap(
+            "SELECT run_at, status, started_at, previous_started_at FROM scheduler_jobs WHERE job = ? FOR UPDATE", job);
+        LocalDateTime currentRunAt = toLocalDateTime((Timestamp) current.get("run_at"));
+        if (currentRunAt != null && !currentRunAt.isBefore(runAt)) {
+            return "RUNNING".equals(current.get("status"))
+                ? Optional.of(new ActiveRun(currentRunAt, toLocalDateTime((Timestamp) current.get("started_at")),
+                    toLocalDateTime((Timestamp) current.get("previous_started_at")), false))
+                : Optional.empty();
+        }
+        
+        // A run overtaken by the next fire time before it finished does not count as finished
+        Map<String, Object> started = jdbcTemplate.queryForMap(
+            "UPDATE scheduler_jobs SET run_at = ?, status = 'RUNNING', started_by = ?, started_at = LOCALTIMESTAMP, " +
+            "previous_started_at = CASE WHEN status = 'DONE' THEN started_at ELSE previous_started_at END, " +
+            "completed_at = NULL, rows_processed = NULL WHERE job = ? RETURNING started_at, previous_started_at",
+            runAt, nodeId, job);
+        LocalDateTime startedAt = toLocalDateTime((Timestamp) started.get("started_at"));
+        LocalDateTime previousStartedAt = toLocalDateTime((Timestamp) started.get("previous_started_at"));
+        jdbcTemplate.update("DELETE FROM scheduler_job_shards WHERE job = ?", job);
+        
+        List<Object[]> rows = new ArrayList<>();
+        if (bounds == null) {
+            rows.add(new Object[]{job, 0, Timestamp.valueOf(runAt), Long.MIN_VALUE, Long.MAX_VALUE});
+        } else {
+            bounds.find(startedAt, previousStartedAt).ifPresent(range -> {
+                // The first and last shard are open-ended, so ids outside the range are covered too
+                long width = Math.max((range.max() - range.min() + 1) / shards, 1);
+                for (int i = 0; i < shards; i++) {
+                    long fromId = i == 0 ? Long.MIN_VALUE : range.min() + i * width;
+                    long toId = i == shards - 1 ? Long.MAX_VALUE : range.min() + (i + 1) * width;
+                    rows.add(new Object[]{job, i, Timestamp.valueOf(runAt), fromId, toId});
+                }
+            });
+        }
+        jdbcTemplate.batchUpdate(
+            "INSERT INTO scheduler_job_shards (job, shard, run_at, from_id, to_id) VALUES (?, ?, ?, ?, ?)", rows);
+        return Optional.of(new ActiveRun(runAt, startedAt, previousStartedAt, true));
+    }
+    
+    /**
+     * Leases the next shard of the run that is unclaimed or whose lease has lapsed
+     */
+    Optional<ShardClaim> claim(String job, LocalDateTime runAt, String nodeId, int leaseSeconds) {
+        return jdbcTemplate.query(
+            "UPDATE scheduler_job_shards SET owner = ?, lease_until = LOCALTIMESTAMP + make_interval(secs => ?) " +
+            "WHERE (job, shard) = (SELECT job, shard FROM scheduler_job_shards " +
+            "WHERE job = ? AND run_at = ? AND " + CLAIMABLE + " ORDER BY shard LIMIT 1 FOR UPDATE SKIP LOCKED) " +
+            "RETURNING shard, from_id, to_id",
+            (rs, rowNum) -> new ShardClaim(rs.getInt("shard"), rs.getLong("from_id"), rs.getLong("to_id")),
+            nodeId, leaseSeconds, job, runAt).stream().findFirst();
+    }
+    
+    /**
+     * Returns false if the shard is no longer leased to this node
+     */
+    boolean renew(String job, LocalDateTime runAt, int shard, String nodeId, int leaseSeconds) {
+        return jdbcTemplate.update(
+            "UPDATE scheduler_job_shards SET lease_until = LOCALTIMESTAMP + make_interval(secs => ?) " +
+            "WHERE job = ? AND shard = ? AND run_at = ? AND owner = ? AND completed_at IS NULL",
+            leaseSeconds, job, shard, runAt, nodeId) == 1;
+    }
+    
+    /**
+     * Returns false if the shard is no longer leased to this node
+     */
+    boolean complete(String job, LocalDateTime runAt, int shard, String nodeId, int rows) {
+        return jdbcTemplate.update(
+            "UPDATE scheduler_job_shards SET completed_at = LOCALTIMESTAMP, lease_until = NULL, rows_processed = ? " +
+            "WHERE job = ? AND shard = ? AND run_at = ? AND owner = ? AND completed_at IS NULL",
+            rows, job, shard, runAt, nodeId) == 1;
+    }
+    
+    /**
+     * Marks the run done once all its shards are, and returns its totals to the one node
+     * that does so
+     */
+    Optional<RunSummary> finish(String job, LocalDateTime runAt) {
+        return jdbcTemplate.query(
+            "UPDATE scheduler_jobs j SET status = 'DONE', completed_at = LOCALTIMESTAMP, rows_processed = " +
+            "(SELECT COALESCE(sum(s.rows_processed), 0) FROM scheduler_job_shards s WHERE s.job = j.job) " +
+            "WHERE j.job = ? AND j.run_at = ? AND j.status = 'RUNNING' AND NOT EXISTS " +
+            "(SELECT 1 FROM scheduler_job_shards s WHERE s.job = j.job AND s.completed_at IS NULL) " +
+            "RETURNING j.rows_processed, j.started_at, j.completed_at",
+            (rs, rowNum) -> new RunSummary(rs.getLong("rows_processed"),
+                rs.getTimestamp("started_at").toLocalDateTime(), rs.getTimestamp("completed_at").toLocalDateTime()),
+            job, runAt).stream().findFirst();
+    }
+    
+    /**
+     * Start of the job's latest finished run, whether it ran across the cluster or locally
+     */
+    Optional<LocalDateTime> lastFinishedStart(String job) {
+        return jdbcTemplate.query(
+            "SELECT CASE WHEN status = 'DONE' THEN started_at ELSE previous_started_at END AS finished_start " +
+            "FROM scheduler_jobs WHERE job = ?",
+            (rs, rowNum) -> toLocalDateTime(rs.getTimestamp("finished_start")),
+            job).stream().filter(Objects::nonNull).findFirst();
+    }
+    
+    /**
+     * Records a run made on one node without shards or leases as the job's latest finished
+     * run, unless a later one has been recorded meanwhile
+     */
+    void recordLocalRun(String job, LocalDateTime startedAt, String nodeId, int rows) {
+        jdbcTemplate.update(
+            "INSERT INTO scheduler_jobs (job, run_at, status, started_by, started_at, completed_at, rows_processed) " +
+            "VALUES (?, ?, 'DONE', ?, ?, LOCALTIMESTAMP, ?) ON CONFLICT (job) DO UPDATE SET run_at = EXCLUDED.run_at, " +
+            "status = 'DONE', started_by = EXCLUDED.started_by, started_at = EXCLUDED.started_at, " +
+            "previous_started_at = CASE WHEN scheduler_jobs.status = 'DONE' THEN scheduler_jobs.started_at " +
+            "ELSE scheduler_jobs.previous_started_at END, completed_at = EXCLUDED.completed_at, " +
+            "rows_processed = EXCLUDED.rows_processed " +
+            "WHERE scheduler_jobs.started_at IS NULL OR scheduler_jobs.started_at < EXCLUDED.started_at",
+            job, startedAt, nodeId, startedAt, rows);
+    }
+    
+    private static LocalDateTime toLocalDateTime(Timestamp timestamp) {
+        return timestamp == null ? null : timestamp.toLocalDateTime();
+    }
+}
@@ -0,0 +1,30 @@
+package com.clinic.appointment.security;
+
+import org.springframework.security.access.AccessDeniedException;
+
+/**
+ * Identity carried in a verified access token; stands in for the users row on authenticated requests
+ */
+public record AuthenticatedUser(Long id, String username, String role) {
+    
+    /**
+     * Clinic staff may see every patient's appointments; patients only their own
+     */
+    public boolean isStaff() {
+        return "ADMIN".equals(role);
+    }
+    
+    /**
+     * The user whose appointments the caller may read when asking for requestedUserId: staff
+     * get what they asked for, null meaning everyone; patients only ever themselves
+     */
+    public Long readableUserId(Long requestedUserId) {
+        if (isStaff()) {
+            return requestedUserId;
+        }
+        if (requestedUserId != null && !requestedUserId.equals(id)) {
+            throw new AccessDeniedException("You can only see your own appointments");
+        }
+        return id;
+    }
+}
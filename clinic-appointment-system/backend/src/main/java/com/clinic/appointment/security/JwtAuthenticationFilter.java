@@ -0,0 +1,65 @@
+package com.clinic.appointment.security;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Authenticates a request from its bearer token alone. Requests without a valid token
+ * continue unauthenticated and are turned away by the authorization rules.
+ */
+@RequiredArgsConstructor
+public class JwtAuthenticationFilter extends OncePerRequestFilter {
+    
+    private static final String BEARER_PREFIX = "Bearer ";
+    // EventSource cannot send headers; no other path accepts a token in the URL, where it ends up in logs
+    private static final String STREAM_PATH = "/api/appointments/stream";
+    private static final String TOKEN_PARAMETER = "access_token";
+    
+    private final JwtService jwtService;
+    
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        String token = token(request);
+        if (token != null) {
+            jwtService.verify(token).ifPresent(user -> {
+                UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
+                    user, null, List.of(new SimpleGrantedAuthority("ROLE_" + user.role())));
+                SecurityContextHolder.getContext().setAuthentication(authentication);
+            });
+        }
+        filterChain.doFilter(request, response);
+    }
+    
+    /**
+     * Streaming responses finish on an async dispatch, which passes the authorization rules
+     * again and so needs the caller authenticated again
+     */
+    @Override
+    protected boolean shouldNotFilterAsyncDispatch() {
+        return false;
+    }
+    
+    private String token(HttpServletRequest request) {
+        String header = request.getHeader(HttpHeaders.AUTHORIZATION);
+        if (header != null && header.startsWith(BEARER_PREFIX)) {
+            return header.substring(BEARER_PREFIX.length());
+        }
+        if (STREAM_PATH.equals(request.getServletPath()) && HttpMethod.GET.matches(request.getMethod())) {
+            return request.getParameter(TOKEN_PARAMETER);
+        }
+        return null;
+    }
+}
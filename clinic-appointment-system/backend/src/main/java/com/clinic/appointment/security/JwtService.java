@@ -0,0 +1,117 @@
+package com.clinic.appointment.security;
+
+import com.clinic.appointment.dto.UserDTO;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.SignatureAlgorithm;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.nio.charset.StandardCharsets;
+import java.security.Key;
+import java.util.Date;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Issues HS256 access tokens at login and verifies them on every request. A verified
+ * token is remembered until it expires (or the cache TTL passes), so repeat calls with
+ * the same token skip the signature check as well as any users lookup.
+ */
+@Service
+public class JwtService {
+    
+    private static final String USER_ID_CLAIM = "uid";
+    private static final String ROLE_CLAIM = "role";
+    
+    private final Key signingKey;
+    private final JwtParser parser;
+    private final long expirationMillis;
+    private final Cache<String, VerifiedToken> verifiedTokens;
+    
+    public JwtService(@Value("${jwt.secret}") String secret,
+                      @Value("${jwt.expiration:86400000}") long expirationMillis,
+                      @Value("${jwt.cache.maximum-size:10000}") long cacheSize,
+                      @Value("${jwt.cache.ttl-seconds:300}") long cacheTtlSeconds,
+                      MeterRegistry meterRegistry) {
+        // Rejects secrets shorter than 256 bits at startup
+        this.signingKey = Keys.hmacShaKeyFor(secret.getBytes(StandardCharsets.UTF_8));
+        this.parser = Jwts.parserBuilder().setSigningKey(signingKey).build();
+        this.expirationMillis = expirationMillis;
+        this.verifiedTokens = Caffeine.newBuilder()
+            .maximumSize(cacheSize)
+            .expireAfter(new UntilTokenExpiry(TimeUnit.SECONDS.toNanos(cacheTtlSeconds)))
+            .recordStats()
+            .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verifiedTokens, "jwtVerifiedTokens");
+    }
+    
+    public String issueToken(UserDTO user) {
+        Date now = new Date();
+        return Jwts.builder()
+            .setSubject(user.getUsername())
+            .claim(USER_ID_CLAIM, user.getId())
+            .claim(ROLE_CLAIM, user.getRole())
+            .setIssuedAt(now)
+            .setExpiration(new Date(now.getTime() + expirationMillis))
+            .signWith(signingKey, SignatureAlgorithm.HS256)
+            .compact();
+    }
+    
+    public long getExpirationMillis() {
+        return expirationMillis;
+    }
+    
+    /**
+     * The identity in the token, or empty if the token is malformed, tampered with or expired
+     */
+    public Optional<AuthenticatedUser> verify(String token) {
+        VerifiedToken cached = verifiedTokens.getIfPresent(token);
+        if (cached != null) {
+            return Optional.of(cached.user());
+        }
+        Claims claims;
+        try {
+            claims = parser.parseClaimsJws(token).getBody();
+        } catch (JwtException | IllegalArgumentException e) {
+            return Optional.empty();
+        }
+        AuthenticatedUser user = new AuthenticatedUser(
+            claims.get(USER_ID_CLAIM, Long.class), claims.getSubject(), claims.get(ROLE_CLAIM, String.class));
+        verifiedTokens.put(token, new VerifiedToken(user, claims.getExpiration().getTime()));
+        return Optional.of(user);
+    }
+    
+    private record VerifiedToken(AuthenticatedUser user, long expiresAtMillis) {
+    }
+    
+    /**
+     * Never keep a token past its own exp claim, even if the cache TTL is longer
+     */
+    private record UntilTokenExpiry(long ttlNanos) implements Expiry<String, VerifiedToken> {
+        
+        @Override
+        public long expireAfterCreate(String token, VerifiedToken verified, long currentTime) {
+            long remainingNanos = TimeUnit.MILLISECONDS.toNanos(verified.expiresAtMillis() - System.currentTimeMillis());
+            return Math.max(0, Math.min(ttlNanos, remainingNanos));
+        }
+        
+        @Override
+        public long expireAfterUpdate(String token, VerifiedToken verified, long currentTime, long currentDuration) {
+            return expireAfterCreate(token, verified, currentTime);
+        }
+        
+        @Override
+        public long expireAfterRead(String token, VerifiedToken verified, long currentTime, long currentDuration) {
+            return currentDuration;
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.dto.AppointmentDTO;
+import com.clinic.appointment.dto.AppointmentSearchCriteria;
+import com.clinic.appointment.repository.AppointmentRepository;
+import com.clinic.appointment.schedule.DoctorDirectory;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.stream.Stream;
+
+/**
+ * Streams appointments from a database cursor straight to the response body,
+ * one row at a time, so an export never holds more than a fetch's worth of rows
+ */
+@Service
+@Slf4j
+public class AppointmentExportService {
+
+    public enum ExportFormat {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        ExportFormat(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        public static ExportFormat from(String value) {
+            for (ExportFormat format : values()) {
+                if (format.extension.equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+            throw new RuntimeException("Unsupported export format: " + value);
+        }
+    }
+
+    private static final String CSV_HEADER = "id,userId,patientName,patientPhone,appointmentDate,durationMinutes,"
+            + "doctorName,department,reason,status,notes,createdAt,updatedAt";
+
+    private final AppointmentRepository appointmentRepository;
+    private final DoctorDirectory doctorDirectory;
+    private final ObjectWriter jsonWriter;
+    private final int fetchSize;
+    private final int flushEvery;
+
+    public AppointmentExportService(AppointmentRepository appointmentRepository,
+                                    DoctorDirectory doctorDirectory,
+                                    ObjectMapper objectMapper,
+                                    @Value("${clinic.export.fetch-size:500}") int fetchSize,
+                                    @Value("${clinic.export.flush-every:1000}") int flushEvery) {
+        this.appointmentRepository = appointmentRepository;
+        this.doctorDirectory = doctorDirectory;
+        this.jsonWriter = objectMapper.writerFor(AppointmentDTO.class);
+        this.fetchSize = fetchSize;
+        this.flushEvery = flushEvery;
+    }
+
+    /**
+     * Writes every appointment matching the criteria to out and returns the row count.
+     * The transaction stays open for the whole export since the cursor lives in it.
+     */
+    @Transactional(readOnly = true)
+    public long export(AppointmentSearchCriteria criteria, ExportFormat format, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        long rows = 0;
+        if (format == ExportFormat.CSV) {
+            writer.write(CSV_HEADER);
+            writer.write('\n');
+        }
+        if (!doctorDirectory.resolveFilterIds(criteria)) {
+            writer.flush();
+            return rows;
+        }
+        try (Stream<AppointmentDTO> appointments = appointmentRepository.streamAll(criteria, fetchSize)) {
+            Iterator<AppointmentDTO> iterator = appointments.iterator();
+            while (iterator.hasNext()) {
+                AppointmentDTO appointment = iterator.next();
+                if (format == ExportFormat.CSV) {
+                    writeCsvRow(writer, appointment);
+                } else {
+                    writer.write(jsonWriter.writeValueAsString(appointment));
+                    writer.write('\n');
+                }
+                // Push what we have so the client sees progress instead of waiting on the buffer
+                if (++rows % flushEvery == 0) {
+                    writer.flush();
+                }
+            }
+        }
+        writer.flush();
+        log.info("Exported {} appointments as {}", rows, format);
+        return rows;
+    }
+
+    private void writeCsvRow(Writer writer, AppointmentDTO appointment) throws IOException {
+        Object[] values = {
+            appointment.getId(), appointment.getUserId(), appointment.getPatientName(),
+            appointment.getPatientPhone(), appointment.getAppointmentDate(), appointment.getDurationMinutes(),
+            appointment.getDoctorName(), appointment.getDepartment(), appointment.getReason(),
+            appointment.getStatus(), appointment.getNotes(), appointment.getCreatedAt(), appointment.getUpdatedAt()
+        };
+        for (int i = 0; i < values.length; i++) {
+            if (i > 0) {
+                writer.write(',');
+            }
+            if (values[i] != null) {
+                writer.write(csvField(values[i].toString()));
+            }
+        }
+        writer.write('\n');
+    }
+
+    /**
+     * RFC 4180 quoting: wrap in quotes when the value contains a delimiter, quote or line break
+     */
+    private static String csvField(String value) {
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+}
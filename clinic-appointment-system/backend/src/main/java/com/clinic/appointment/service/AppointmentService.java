@@ -1,25 +1,71 @@
 package com.clinic.appointment.service;
 
 import com.clinic.appointment.dto.AppointmentDTO;
+import com.clinic.appointment.dto.AppointmentPageDTO;
+import com.clinic.appointment.dto.AppointmentSearchCriteria;
+import com.clinic.appointment.event.AppointmentEvent;
+import com.clinic.appointment.event.AppointmentEventBus;
+import com.clinic.appointment.exception.SlotUnavailableException;
 import com.clinic.appointment.model.Appointment;
 import com.clinic.appointment.model.Appointment.AppointmentStatus;
+import com.clinic.appointment.model.AppointmentOutboxEvent;
+import com.clinic.appointment.model.Department;
+import com.clinic.appointment.model.Doctor;
 import com.clinic.appointment.model.User;
+import com.clinic.appointment.repository.AppointmentCursor;
+import com.clinic.appointment.repository.AppointmentOutboxRepository;
 import com.clinic.appointment.repository.AppointmentRepository;
+import com.clinic.appointment.repository.DoctorRepository;
+import com.clinic.appointment.schedule.BookingLocks;
+import com.clinic.appointment.schedule.DoctorDirectory;
+import com.clinic.appointment.schedule.DoctorRef;
+import com.clinic.appointment.schedule.DoctorScheduleIndex;
+import com.clinic.appointment.schedule.ScheduleEntry;
+import com.clinic.appointment.schedule.SlotGrid;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.RequiredArgsConstructor;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PessimisticLockingFailureException;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.LongPredicate;
+import java.util.function.Supplier;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 @Service
 @RequiredArgsConstructor
 public class AppointmentService {
     
+    private static final int DEFAULT_PAGE_SIZE = 50;
+    private static final int MAX_PAGE_SIZE = 200;
+    // ex_appointments_pYYYYMM_doctor_slot: each monthly partition has its own exclusion constraint
+    private static final Pattern SLOT_CONSTRAINT = Pattern.compile("ex_appointments_\\w+_doctor_slot");
+    private static final String EXCLUSION_CHECK = "while checking exclusion constraint";
+    private static final String BOOKING_METRIC = "clinic.booking";
+    private static final String BOOKING_PHASE_METRIC = "clinic.booking.phase";
+    private static final String SLOT_TAKEN_MESSAGE = "This time slot is already booked for the selected doctor";
+    
     private final AppointmentRepository appointmentRepository;
     private final UserService userService;
+    private final DoctorScheduleIndex scheduleIndex;
+    private final DoctorDirectory doctorDirectory;
+    private final DoctorRepository doctorRepository;
+    private final BookingLocks bookingLocks;
+    private final SlotGrid slotGrid;
+    private final AppointmentEventBus eventBus;
+    private final AppointmentOutboxRepository outboxRepository;
+    private final MeterRegistry meterRegistry;
     
     @Transactional
     public AppointmentDTO createAppointment(AppointmentDTO appointmentDTO) {
@@ -28,60 +74,165 @@ public class AppointmentService {
             throw new RuntimeException("Appointment date must be in the future");
         }
         
-        // Check for conflicts
-        List<Appointment> conflicts = appointmentRepository.findConflictingAppointments(
-            appointmentDTO.getDoctorName(),
-            appointmentDTO.getAppointmentDate()
-        );
+        int durationMinutes = durationOf(appointmentDTO);
+        ensureWithinOpeningHours(appointmentDTO.getAppointmentDate(), durationMinutes, "");
         
-        if (!conflicts.isEmpty()) {
-            throw new RuntimeException("This time slot is already booked for the selected doctor");
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome = "error";
+        try {
+            DoctorRef doctor = timed("doctor_lookup", () ->
+                doctorDirectory.resolve(appointmentDTO.getDoctorName(), appointmentDTO.getDepartment()));
+            
+            // Serialize bookings for this doctor until commit, then check overlaps in memory
+            timed("conflict_check", () -> {
+                bookingLocks.lockUntilCompletion(doctor.id());
+                ensureSlotFree(doctor.id(), appointmentDTO.getAppointmentDate(), durationMinutes, null);
+                return null;
+            });
+            
+            User user = timed("user_lookup", () -> userService.getUserEntityById(appointmentDTO.getUserId()));
+            
+            Appointment savedAppointment = timed("insert", () -> saveBooking(newAppointment(appointmentDTO, user, doctor)));
+            syncScheduleAfterCommit(savedAppointment);
+            publishChange(AppointmentEvent.Type.CREATED, savedAppointment);
+            outcome = "success";
+            return convertToDTO(savedAppointment, doctor);
+        } catch (SlotUnavailableException e) {
+            outcome = "conflict";
+            throw e;
+        } finally {
+            sample.stop(Timer.builder(BOOKING_METRIC)
+                .description("Single appointment bookings, lock wait included")
+                .tag("outcome", outcome)
+                .publishPercentileHistogram()
+                .register(meterRegistry));
+        }
+    }
+    
+    /**
+     * Create a list of appointments as one unit: either every booking is free of conflicts,
+     * with the schedule and with each other, and all are inserted in JDBC batches, or none is
+     */
+    @Transactional
+    public List<AppointmentDTO> createAppointments(List<AppointmentDTO> appointmentDTOs) {
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < appointmentDTOs.size(); i++) {
+            AppointmentDTO dto = appointmentDTOs.get(i);
+            if (dto.getAppointmentDate().isBefore(now)) {
+                throw new RuntimeException("Appointment " + (i + 1) + ": Appointment date must be in the future");
+            }
+            ensureWithinOpeningHours(dto.getAppointmentDate(), durationOf(dto), "Appointment " + (i + 1) + ": ");
         }
         
-        User user = userService.getUserEntityById(appointmentDTO.getUserId());
+        List<DoctorRef> doctors = appointmentDTOs.stream()
+            .map(dto -> doctorDirectory.resolve(dto.getDoctorName(), dto.getDepartment()))
+            .toList();
         
-        Appointment appointment = new Appointment();
-        appointment.setUser(user);
-        appointment.setPatientName(appointmentDTO.getPatientName());
-        appointment.setPatientPhone(appointmentDTO.getPatientPhone());
-        appointment.setAppointmentDate(appointmentDTO.getAppointmentDate());
-        appointment.setDoctorName(appointmentDTO.getDoctorName());
-        appointment.setDepartment(appointmentDTO.getDepartment());
-        appointment.setReason(appointmentDTO.getReason());
-        appointment.setStatus(AppointmentStatus.SCHEDULED);
-        appointment.setNotes(appointmentDTO.getNotes());
+        bookingLocks.lockAllUntilCompletion(doctors.stream()
+            .map(DoctorRef::id)
+            .collect(Collectors.toSet()));
+        
+        Map<Integer, List<ScheduleEntry>> accepted = new HashMap<>();
+        for (int i = 0; i < appointmentDTOs.size(); i++) {
+            AppointmentDTO dto = appointmentDTOs.get(i);
+            Integer doctorId = doctors.get(i).id();
+            LocalDateTime start = dto.getAppointmentDate();
+            LocalDateTime end = start.plusMinutes(durationOf(dto));
+            List<ScheduleEntry> sameDoctor = accepted.computeIfAbsent(doctorId, id -> new ArrayList<>());
+            boolean overlapsBatch = sameDoctor.stream().anyMatch(entry -> entry.overlaps(start, end));
+            if (overlapsBatch || !isSlotFree(doctorId, start, end, null)) {
+                throw new SlotUnavailableException("Appointment " + (i + 1) + ": " + SLOT_TAKEN_MESSAGE);
+            }
+            sameDoctor.add(new ScheduleEntry(null, doctorId, start, end));
+        }
         
-        Appointment savedAppointment = appointmentRepository.save(appointment);
-        return convertToDTO(savedAppointment);
+        Map<Long, User> users = userService.getUserEntitiesByIds(appointmentDTOs.stream()
+            .map(AppointmentDTO::getUserId)
+            .collect(Collectors.toSet()));
+        
+        List<Appointment> appointments = new ArrayList<>(appointmentDTOs.size());
+        for (int i = 0; i < appointmentDTOs.size(); i++) {
+            AppointmentDTO dto = appointmentDTOs.get(i);
+            User user = users.get(dto.getUserId());
+            if (user == null) {
+                throw new RuntimeException("Appointment " + (i + 1) + ": User not found");
+            }
+            appointments.add(newAppointment(dto, user, doctors.get(i)));
+        }
+        
+        List<Appointment> savedAppointments = saveBookings(appointments);
+        for (Appointment saved : savedAppointments) {
+            syncScheduleAfterCommit(saved);
+            publishChange(AppointmentEvent.Type.CREATED, saved);
+        }
+        List<AppointmentDTO> created = new ArrayList<>(savedAppointments.size());
+        for (int i = 0; i < savedAppointments.size(); i++) {
+            created.add(convertToDTO(savedAppointments.get(i), doctors.get(i)));
+        }
+        return created;
     }
     
+    @Transactional(readOnly = true)
     public Optional<AppointmentDTO> getAppointmentById(Long id) {
-        return appointmentRepository.findById(id).map(this::convertToDTO);
+        return appointmentRepository.findDtoById(id);
     }
     
-    public List<AppointmentDTO> getAllAppointments() {
-        return appointmentRepository.findAll().stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+    @Transactional(readOnly = true)
+    public AppointmentPageDTO searchAppointments(AppointmentSearchCriteria criteria, String cursor, Integer size) {
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        AppointmentCursor after = cursor == null || cursor.isBlank() ? null : AppointmentCursor.decode(cursor);
+        if (!doctorDirectory.resolveFilterIds(criteria)) {
+            return new AppointmentPageDTO(List.of(), null, false);
+        }
+        
+        // Fetch one extra row to learn whether another page exists without a count query
+        List<AppointmentDTO> content = appointmentRepository.findPage(criteria, after, pageSize + 1);
+        boolean hasMore = content.size() > pageSize;
+        if (hasMore) {
+            content = content.subList(0, pageSize);
+        }
+        
+        String nextCursor = null;
+        if (hasMore) {
+            AppointmentDTO last = content.get(content.size() - 1);
+            nextCursor = new AppointmentCursor(last.getAppointmentDate(), last.getId()).encode();
+        }
+        
+        return new AppointmentPageDTO(content, nextCursor, hasMore);
     }
     
-    public List<AppointmentDTO> getAppointmentsByUser(Long userId) {
-        User user = userService.getUserEntityById(userId);
-        return appointmentRepository.findByUserOrderByAppointmentDateDesc(user).stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+    /**
+     * The user's page of appointments, or empty when notModified accepts the user's data
+     * version. The version is read first and the page after it in the same transaction,
+     * so the page is never older than the version a client will revalidate it with.
+     */
+    @Transactional(readOnly = true)
+    public Optional<AppointmentPageDTO> getAppointmentsByUser(Long userId, String cursor, Integer size,
+                                                              LongPredicate notModified) {
+        long version = userService.getDataVersion(userId)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        if (notModified.test(version)) {
+            return Optional.empty();
+        }
+        AppointmentSearchCriteria criteria = new AppointmentSearchCriteria();
+        criteria.setUserId(userId);
+        criteria.setDescending(true);
+        return Optional.of(searchAppointments(criteria, cursor, size));
     }
     
-    public List<AppointmentDTO> getAppointmentsByStatus(AppointmentStatus status) {
-        return appointmentRepository.findByStatus(status).stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+    @Transactional(readOnly = true)
+    public AppointmentPageDTO getAppointmentsByStatus(AppointmentStatus status, String cursor, Integer size) {
+        AppointmentSearchCriteria criteria = new AppointmentSearchCriteria();
+        criteria.setStatus(status);
+        return searchAppointments(criteria, cursor, size);
     }
     
     @Transactional
     public AppointmentDTO updateAppointment(Long id, AppointmentDTO appointmentDTO) {
-        Appointment appointment = appointmentRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Appointment not found"));
+        // The department belongs to the doctor; it only matters here if the doctor is new
+        DoctorRef newDoctor = appointmentDTO.getDoctorName() == null ? null
+            : doctorDirectory.resolve(appointmentDTO.getDoctorName(), appointmentDTO.getDepartment());
+        Appointment appointment = findLocked(id, newDoctor);
         
         if (appointmentDTO.getPatientName() != null) {
             appointment.setPatientName(appointmentDTO.getPatientName());
@@ -95,11 +246,14 @@ public class AppointmentService {
             }
             appointment.setAppointmentDate(appointmentDTO.getAppointmentDate());
         }
-        if (appointmentDTO.getDoctorName() != null) {
-            appointment.setDoctorName(appointmentDTO.getDoctorName());
+        if (appointmentDTO.getDurationMinutes() != null) {
+            appointment.setDurationMinutes(appointmentDTO.getDurationMinutes());
+        }
+        if (appointmentDTO.getAppointmentDate() != null || appointmentDTO.getDurationMinutes() != null) {
+            ensureWithinOpeningHours(appointment.getAppointmentDate(), appointment.getDurationMinutes(), "");
         }
-        if (appointmentDTO.getDepartment() != null) {
-            appointment.setDepartment(appointmentDTO.getDepartment());
+        if (newDoctor != null) {
+            appointment.setDoctor(doctorRepository.getReferenceById(newDoctor.id()));
         }
         if (appointmentDTO.getReason() != null) {
             appointment.setReason(appointmentDTO.getReason());
@@ -111,36 +265,214 @@ public class AppointmentService {
             appointment.setNotes(appointmentDTO.getNotes());
         }
         
-        Appointment updatedAppointment = appointmentRepository.save(appointment);
+        if (appointment.isActive()) {
+            ensureSlotFree(appointment.getDoctor().getId(), appointment.getAppointmentDate(),
+                appointment.getDurationMinutes(), appointment.getId());
+        }
+        
+        Appointment updatedAppointment = saveBooking(appointment);
+        syncScheduleAfterCommit(updatedAppointment);
+        publishChange(AppointmentEvent.Type.UPDATED, updatedAppointment);
         return convertToDTO(updatedAppointment);
     }
     
     @Transactional
     public void cancelAppointment(Long id) {
-        Appointment appointment = appointmentRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("Appointment not found"));
+        Appointment appointment = findLocked(id, null);
         
         appointment.setStatus(AppointmentStatus.CANCELLED);
         appointmentRepository.save(appointment);
+        syncScheduleAfterCommit(appointment);
+        publishChange(AppointmentEvent.Type.UPDATED, appointment);
     }
     
     @Transactional
     public void deleteAppointment(Long id) {
-        if (!appointmentRepository.existsById(id)) {
-            throw new RuntimeException("Appointment not found");
+        Appointment appointment = findLocked(id, null);
+        appointmentRepository.delete(appointment);
+        afterCommit(() -> scheduleIndex.remove(id));
+        publishChange(AppointmentEvent.Type.DELETED, appointment);
+    }
+    
+    /**
+     * Id of the doctor a change feed is narrowed to, or null when no doctor is given
+     */
+    public Integer findDoctorFilterId(String doctorName) {
+        if (doctorName == null || doctorName.isBlank()) {
+            return null;
+        }
+        return doctorDirectory.find(doctorName)
+                .map(DoctorRef::id)
+                .orElseThrow(() -> new RuntimeException("Doctor not found"));
+    }
+    
+    /**
+     * Load an appointment holding the stripes of its doctor and of the doctor it is about
+     * to move to, if any. The stripes are taken in a fixed order before the row is read, so
+     * a booking checked against the schedule cannot interleave with the move or cancellation
+     * and two changes to the same appointment are applied one after the other.
+     */
+    private Appointment findLocked(Long id, DoctorRef newDoctor) {
+        Integer doctorId = appointmentRepository.findDoctorIdById(id)
+                .orElseThrow(() -> new RuntimeException("Appointment not found"));
+        bookingLocks.lockAllUntilCompletion(newDoctor == null ? List.of(doctorId) : List.of(doctorId, newDoctor.id()));
+        Appointment appointment = appointmentRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("Appointment not found"));
+        Integer currentDoctorId = appointment.getDoctor().getId();
+        if (!currentDoctorId.equals(doctorId)) {
+            // Moved to another doctor in between; the lock timeout bounds this out-of-order wait
+            bookingLocks.lockUntilCompletion(currentDoctorId);
+        }
+        return appointment;
+    }
+    
+    private void ensureSlotFree(Integer doctorId, LocalDateTime start, int durationMinutes, Long ignoredAppointmentId) {
+        if (!isSlotFree(doctorId, start, start.plusMinutes(durationMinutes), ignoredAppointmentId)) {
+            throw new SlotUnavailableException(SLOT_TAKEN_MESSAGE);
+        }
+    }
+    
+    /**
+     * The index only sees this node's commits, so a conflict it reports may be a booking
+     * since cancelled, moved or deleted by another node, the NO_SHOW sweep or a user delete.
+     * Before refusing, re-read the doctor's bookings around the slot and correct the index.
+     */
+    private boolean isSlotFree(Integer doctorId, LocalDateTime start, LocalDateTime end, Long ignoredAppointmentId) {
+        if (scheduleIndex.isFree(doctorId, start, end, ignoredAppointmentId)) {
+            return true;
+        }
+        // Visits last at most 480 minutes, so any that overlaps the slot starts within the day before it
+        List<ScheduleEntry> current = appointmentRepository.findActiveScheduleEntries(doctorId, start.minusDays(1), end);
+        scheduleIndex.refresh(doctorId, start, end, current);
+        return current.stream()
+            .noneMatch(entry -> entry.overlaps(start, end) && !entry.appointmentId().equals(ignoredAppointmentId));
+    }
+    
+    /**
+     * Records one step of a booking under clinic.booking.phase{phase=...}
+     */
+    private <T> T timed(String phase, Supplier<T> step) {
+        return Timer.builder(BOOKING_PHASE_METRIC)
+            .tag("phase", phase)
+            .publishPercentileHistogram()
+            .register(meterRegistry)
+            .record(step);
+    }
+    
+    /**
+     * Flush immediately so a booking that raced in from another node surfaces here as a
+     * violation of the exclusion constraint rather than as a failed commit
+     */
+    private Appointment saveBooking(Appointment appointment) {
+        return saveBookings(List.of(appointment)).get(0);
+    }
+    
+    private List<Appointment> saveBookings(List<Appointment> appointments) {
+        try {
+            List<Appointment> saved = appointmentRepository.saveAll(appointments);
+            appointmentRepository.flush();
+            return saved;
+        } catch (DataIntegrityViolationException e) {
+            String cause = e.getMostSpecificCause().getMessage();
+            if (cause != null && SLOT_CONSTRAINT.matcher(cause).find()) {
+                throw new SlotUnavailableException(SLOT_TAKEN_MESSAGE);
+            }
+            throw e;
+        } catch (PessimisticLockingFailureException e) {
+            // Overlapping inserts from two nodes can each wait on the other's exclusion check,
+            // and PostgreSQL aborts one of them as a deadlock
+            String cause = e.getMostSpecificCause().getMessage();
+            if (cause != null && cause.contains(EXCLUSION_CHECK)) {
+                throw new SlotUnavailableException(SLOT_TAKEN_MESSAGE);
+            }
+            throw e;
         }
-        appointmentRepository.deleteById(id);
     }
     
-    private AppointmentDTO convertToDTO(Appointment appointment) {
+    private Appointment newAppointment(AppointmentDTO appointmentDTO, User user, DoctorRef doctor) {
+        Appointment appointment = new Appointment();
+        appointment.setUser(user);
+        appointment.setPatientName(appointmentDTO.getPatientName());
+        appointment.setPatientPhone(appointmentDTO.getPatientPhone());
+        appointment.setAppointmentDate(appointmentDTO.getAppointmentDate());
+        appointment.setDurationMinutes(durationOf(appointmentDTO));
+        // A reference is enough to write doctor_id; the doctor row is never loaded
+        appointment.setDoctor(doctorRepository.getReferenceById(doctor.id()));
+        appointment.setReason(appointmentDTO.getReason());
+        appointment.setStatus(AppointmentStatus.SCHEDULED);
+        appointment.setNotes(appointmentDTO.getNotes());
+        return appointment;
+    }
+    
+    /**
+     * A visit has to fit within one day's opening hours. Besides keeping bookings to when
+     * the clinic is open, this keeps every visit inside its month's partition, which is
+     * what the per-partition exclusion constraints rely on.
+     */
+    private void ensureWithinOpeningHours(LocalDateTime start, int durationMinutes, String prefix) {
+        if (!slotGrid.withinOpeningHours(start, durationMinutes)) {
+            throw new RuntimeException(prefix + "Appointment must start and end within clinic hours ("
+                + slotGrid.opensAt() + " to " + slotGrid.closesAt() + ")");
+        }
+    }
+    
+    private int durationOf(AppointmentDTO appointmentDTO) {
+        return appointmentDTO.getDurationMinutes() != null
+            ? appointmentDTO.getDurationMinutes()
+            : Appointment.DEFAULT_DURATION_MINUTES;
+    }
+    
+    private void syncScheduleAfterCommit(Appointment appointment) {
+        Long id = appointment.getId();
+        if (appointment.isActive()) {
+            ScheduleEntry entry = new ScheduleEntry(id, appointment.getDoctor().getId(),
+                appointment.getAppointmentDate(), appointment.getAppointmentEnd());
+            afterCommit(() -> scheduleIndex.put(entry));
+        } else {
+            afterCommit(() -> scheduleIndex.remove(id));
+        }
+    }
+    
+    /**
+     * The event is captured now, from the state being committed: it goes into the outbox with
+     * the change, and out to this node's streams once the commit succeeds
+     */
+    private void publishChange(AppointmentEvent.Type type, Appointment appointment) {
+        AppointmentEvent event = AppointmentEvent.of(type, appointment);
+        outboxRepository.save(AppointmentOutboxEvent.of(event));
+        afterCommit(() -> eventBus.publish(event));
+    }
+    
+    private void afterCommit(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                action.run();
+            }
+        });
+    }
+    
+    static AppointmentDTO convertToDTO(Appointment appointment) {
+        Doctor doctor = appointment.getDoctor();
+        Department department = doctor.getDepartment();
+        return convertToDTO(appointment,
+            new DoctorRef(doctor.getId(), doctor.getName(), department != null ? department.getName() : null));
+    }
+    
+    static AppointmentDTO convertToDTO(Appointment appointment, DoctorRef doctor) {
         AppointmentDTO dto = new AppointmentDTO();
         dto.setId(appointment.getId());
         dto.setUserId(appointment.getUser().getId());
         dto.setPatientName(appointment.getPatientName());
         dto.setPatientPhone(appointment.getPatientPhone());
         dto.setAppointmentDate(appointment.getAppointmentDate());
-        dto.setDoctorName(appointment.getDoctorName());
-        dto.setDepartment(appointment.getDepartment());
+        dto.setDurationMinutes(appointment.getDurationMinutes());
+        dto.setDoctorName(doctor.name());
+        dto.setDepartment(doctor.department());
         dto.setReason(appointment.getReason());
         dto.setStatus(appointment.getStatus());
         dto.setNotes(appointment.getNotes());
@@ -0,0 +1,200 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.dto.AppointmentChangeDTO;
+import com.clinic.appointment.dto.AppointmentChangesDTO;
+import com.clinic.appointment.dto.AppointmentDTO;
+import com.clinic.appointment.event.AppointmentEvent;
+import com.clinic.appointment.exception.SyncTokenExpiredException;
+import com.clinic.appointment.repository.AppointmentRepository;
+import com.clinic.appointment.repository.SyncToken;
+import com.clinic.appointment.schedule.DoctorDirectory;
+import com.clinic.appointment.schedule.DoctorRef;
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Incremental sync over the appointment change log that the database keeps (V6 migration):
+ * clients pass back the token of their last page and receive only what changed since.
+ */
+@Service
+@RequiredArgsConstructor
+public class AppointmentSyncService {
+    
+    private static final int DEFAULT_PAGE_SIZE = 200;
+    private static final int MAX_PAGE_SIZE = 1000;
+    
+    private final JdbcTemplate jdbcTemplate;
+    private final AppointmentRepository appointmentRepository;
+    private final DoctorDirectory doctorDirectory;
+    
+    private record Change(long xid, long seq, long appointmentId, AppointmentEvent.Type type) {
+    }
+    
+    public record ChangedAppointments(Set<Long> ids, SyncToken next, boolean hasMore) {
+    }
+    
+    /**
+     * Changes after the since token, oldest first, narrowed to one user and/or doctor. Without
+     * a token, returns no changes and a token for the present: take it before downloading the
+     * full list, then sync from it. Each appointment appears once per page, with its state as
+     * of now, so applying pages in order converges on the current data.
+     */
+    @Transactional(readOnly = true)
+    public AppointmentChangesDTO changesSince(String since, Long userId, String doctorName, Integer size) {
+        int pageSize = size == null ? DEFAULT_PAGE_SIZE : Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+        Integer doctorId = null;
+        if (doctorName != null && !doctorName.isBlank()) {
+            doctorId = doctorDirectory.find(doctorName)
+                    .map(DoctorRef::id)
+                    .orElseThrow(() -> new RuntimeException("Doctor not found"));
+        }
+        
+        long xmin = currentXmin();
+        SyncToken present = new SyncToken(xmin, 0);
+        if (since == null || since.isBlank()) {
+            return new AppointmentChangesDTO(List.of(), present.encode(), false);
+        }
+        
+        SyncToken after = SyncToken.decode(since);
+        requireAfterHorizon(after);
+        List<Change> changes = readChanges(after, xmin, userId, doctorId, pageSize + 1);
+        boolean hasMore = changes.size() > pageSize;
+        if (hasMore) {
+            changes = changes.subList(0, pageSize);
+        }
+        
+        // A caught-up client moves on to the present, so its token does not age into the pruned range
+        SyncToken next = hasMore ? tokenOf(changes.get(changes.size() - 1)) : present;
+        if (next.compareTo(after) < 0) {
+            next = after;
+        }
+        return new AppointmentChangesDTO(collapse(changes), next.encode(), hasMore);
+    }
+    
+    /**
+     * Position in the change log of the present; every change recorded later is returned by
+     * {@link #changedSince}
+     */
+    @Transactional
+    public SyncToken present() {
+        return new SyncToken(currentXmin(), 0);
+    }
+    
+    /**
+     * Ids of up to limit appointments changed after the position, across all users and
+     * doctors, and the position to continue from. For nodes keeping in-memory state in step
+     * with the appointments table; they read the current rows themselves.
+     */
+    @Transactional
+    public ChangedAppointments changedSince(SyncToken after, int limit) {
+        long xmin = currentXmin();
+        requireAfterHorizon(after);
+        List<Change> changes = readChanges(after, xmin, null, null, limit + 1);
+        boolean hasMore = changes.size() > limit;
+        if (hasMore) {
+            changes = changes.subList(0, limit);
+        }
+        SyncToken next = hasMore ? tokenOf(changes.get(changes.size() - 1)) : new SyncToken(xmin, 0);
+        if (next.compareTo(after) < 0) {
+            next = after;
+        }
+        Set<Long> ids = changes.stream()
+            .map(Change::appointmentId)
+            .collect(Collectors.toCollection(LinkedHashSet::new));
+        return new ChangedAppointments(ids, next, hasMore);
+    }
+    
+    /**
+     * Removes up to batchSize change log rows recorded before the cutoff and raises the
+     * horizon below which sync tokens are refused. Returns the number of rows removed.
+     */
+    @Transactional
+    public int pruneChanges(LocalDateTime cutoff, int batchSize) {
+        List<SyncToken> pruned = jdbcTemplate.query(
+            "DELETE FROM appointment_changes WHERE seq IN (" +
+            "SELECT seq FROM appointment_changes WHERE changed_at < ? ORDER BY seq LIMIT ?) RETURNING xid, seq",
+            (rs, rowNum) -> new SyncToken(rs.getLong("xid"), rs.getLong("seq")),
+            cutoff, batchSize);
+        pruned.stream().max(SyncToken::compareTo).ifPresent(highest -> jdbcTemplate.update(
+            "UPDATE appointment_changes_horizon SET xid = ?, seq = ? WHERE (xid, seq) < (?, ?)",
+            highest.xid(), highest.seq(), highest.xid(), highest.seq()));
+        return pruned.size();
+    }
+    
+    /**
+     * Transactions below the snapshot xmin have all ended; nothing can still be added before their rows
+     */
+    private long currentXmin() {
+        return jdbcTemplate.queryForObject("SELECT pg_snapshot_xmin(pg_current_snapshot())::text::bigint", Long.class);
+    }
+    
+    private void requireAfterHorizon(SyncToken after) {
+        SyncToken horizon = jdbcTemplate.queryForObject(
+            "SELECT xid, seq FROM appointment_changes_horizon",
+            (rs, rowNum) -> new SyncToken(rs.getLong("xid"), rs.getLong("seq")));
+        if (after.compareTo(horizon) < 0) {
+            throw new SyncTokenExpiredException("Sync token has expired; reload the full list and sync from a new token");
+        }
+    }
+    
+    private List<Change> readChanges(SyncToken after, long xmin, Long userId, Integer doctorId, int limit) {
+        StringBuilder sql = new StringBuilder(
+            "SELECT xid, seq, appointment_id, change_type FROM appointment_changes " +
+            "WHERE (xid, seq) > (?, ?) AND xid < ?");
+        List<Object> args = new ArrayList<>(List.of(after.xid(), after.seq(), xmin));
+        if (userId != null) {
+            sql.append(" AND user_id = ?");
+            args.add(userId);
+        }
+        if (doctorId != null) {
+            sql.append(" AND doctor_id = ?");
+            args.add(doctorId);
+        }
+        sql.append(" ORDER BY xid, seq LIMIT ?");
+        args.add(limit);
+        return jdbcTemplate.query(sql.toString(),
+            (rs, rowNum) -> new Change(rs.getLong("xid"), rs.getLong("seq"), rs.getLong("appointment_id"),
+                AppointmentEvent.Type.valueOf(rs.getString("change_type"))),
+            args.toArray());
+    }
+    
+    private static SyncToken tokenOf(Change change) {
+        return new SyncToken(change.xid(), change.seq());
+    }
+    
+    /**
+     * Keeps the last change per appointment and pairs it with the appointment's current
+     * state; one that no longer exists is reported as deleted
+     */
+    private List<AppointmentChangeDTO> collapse(List<Change> changes) {
+        Map<Long, Change> latest = new LinkedHashMap<>();
+        for (Change change : changes) {
+            latest.remove(change.appointmentId());
+            latest.put(change.appointmentId(), change);
+        }
+        Map<Long, AppointmentDTO> current = latest.isEmpty() ? Map.of()
+            : appointmentRepository.findDtosByIds(latest.keySet()).stream()
+                .collect(Collectors.toMap(AppointmentDTO::getId, Function.identity()));
+        
+        List<AppointmentChangeDTO> result = new ArrayList<>(latest.size());
+        for (Change change : latest.values()) {
+            AppointmentDTO appointment = current.get(change.appointmentId());
+            AppointmentEvent.Type type = appointment == null ? AppointmentEvent.Type.DELETED
+                : change.type() == AppointmentEvent.Type.DELETED ? AppointmentEvent.Type.UPDATED : change.type();
+            result.add(new AppointmentChangeDTO(type, change.appointmentId(), appointment));
+        }
+        return result;
+    }
+}
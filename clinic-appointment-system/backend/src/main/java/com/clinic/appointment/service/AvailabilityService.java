@@ -0,0 +1,88 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.dto.AvailabilityDTO;
+import com.clinic.appointment.model.Appointment;
+import com.clinic.appointment.schedule.DoctorDirectory;
+import com.clinic.appointment.schedule.DoctorRef;
+import com.clinic.appointment.schedule.DoctorScheduleIndex;
+import com.clinic.appointment.schedule.SlotGrid;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Answers free-slot searches from the in-memory per-day availability bitmaps
+ * without touching the appointments table
+ */
+@Service
+@RequiredArgsConstructor
+public class AvailabilityService {
+    
+    private static final int DEFAULT_RANGE_DAYS = 7;
+    private static final int MAX_RANGE_DAYS = 31;
+    
+    private final DoctorScheduleIndex scheduleIndex;
+    private final DoctorDirectory doctorDirectory;
+    private final SlotGrid slotGrid;
+    
+    public List<AvailabilityDTO> findAvailability(String doctorName, String department,
+                                                  LocalDate from, LocalDate to, Integer durationMinutes) {
+        if (doctorName == null && department == null) {
+            throw new RuntimeException("Either doctor or department is required");
+        }
+        LocalDate start = from != null ? from : LocalDate.now();
+        LocalDate end = to != null ? to : start.plusDays(DEFAULT_RANGE_DAYS - 1);
+        if (end.isBefore(start)) {
+            throw new RuntimeException("End date must not be before start date");
+        }
+        if (ChronoUnit.DAYS.between(start, end) >= MAX_RANGE_DAYS) {
+            throw new RuntimeException("Date range must not exceed " + MAX_RANGE_DAYS + " days");
+        }
+        int slotsNeeded = slotGrid.slotsFor(durationMinutes != null ? durationMinutes : Appointment.DEFAULT_DURATION_MINUTES);
+        
+        // An unknown doctor has no bookings yet, so every slot is free
+        List<DoctorRef> doctors = doctorName != null
+            ? List.of(doctorDirectory.find(doctorName).orElse(new DoctorRef(null, doctorName, null)))
+            : doctorDirectory.all().stream()
+                .filter(doctor -> department.equalsIgnoreCase(doctor.department()))
+                .toList();
+        
+        LocalDateTime now = LocalDateTime.now();
+        List<AvailabilityDTO> result = new ArrayList<>();
+        for (DoctorRef doctor : doctors) {
+            for (LocalDate date = start; !date.isAfter(end); date = date.plusDays(1)) {
+                List<LocalTime> freeSlots = freeSlots(scheduleIndex.busySlots(doctor.id(), date), date, slotsNeeded, now);
+                result.add(new AvailabilityDTO(doctor.name(), doctor.department(), date, freeSlots));
+            }
+        }
+        return result;
+    }
+    
+    /**
+     * Start times whose next slotsNeeded slots are all clear in the busy bitmap
+     */
+    private List<LocalTime> freeSlots(BitSet busy, LocalDate date, int slotsNeeded, LocalDateTime now) {
+        List<LocalTime> freeSlots = new ArrayList<>();
+        int slot = 0;
+        while (slot + slotsNeeded <= slotGrid.slotsPerDay()) {
+            int nextBusy = busy.nextSetBit(slot);
+            if (nextBusy != -1 && nextBusy < slot + slotsNeeded) {
+                slot = nextBusy + 1;
+                continue;
+            }
+            LocalDateTime slotStart = slotGrid.slotStart(date, slot);
+            if (slotStart.isAfter(now)) {
+                freeSlots.add(slotStart.toLocalTime());
+            }
+            slot++;
+        }
+        return freeSlots;
+    }
+}
@@ -1,16 +1,25 @@
 package com.clinic.appointment.service;
 
+import com.clinic.appointment.config.CacheConfig;
 import com.clinic.appointment.dto.UserDTO;
 import com.clinic.appointment.dto.UserUpdateDTO;
 import com.clinic.appointment.model.User;
 import com.clinic.appointment.repository.UserRepository;
 import lombok.RequiredArgsConstructor;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.annotation.Cacheable;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
+import java.util.function.LongPredicate;
 import java.util.stream.Collectors;
 
 @Service
@@ -18,9 +27,14 @@ import java.util.stream.Collectors;
 public class UserService {
     
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHashingService passwordHashingService;
+    private final CacheManager cacheManager;
+    private final TransactionTemplate transactionTemplate;
     
-    @Transactional
+    /**
+     * Not transactional on purpose: the hash is computed on the hashing pool without
+     * holding a database connection; the unique constraints catch a racing duplicate.
+     */
     public UserDTO createUser(UserDTO userDTO) {
         if (userRepository.existsByUsername(userDTO.getUsername())) {
             throw new RuntimeException("Username already exists");
@@ -32,7 +46,7 @@ public class UserService {
         User user = new User();
         user.setUsername(userDTO.getUsername());
         user.setEmail(userDTO.getEmail());
-        user.setPassword(passwordEncoder.encode(userDTO.getPassword()));
+        user.setPassword(passwordHashingService.encode(userDTO.getPassword()));
         user.setFullName(userDTO.getFullName());
         user.setPhoneNumber(userDTO.getPhoneNumber());
         user.setAddress(userDTO.getAddress());
@@ -43,25 +57,109 @@ public class UserService {
         return convertToDTO(savedUser);
     }
     
+    /**
+     * Check the credentials and, if the stored hash predates the configured BCrypt
+     * strength, replace it with a fresh hash while the raw password is at hand. The new
+     * hash only replaces the one just verified, so a password changed meanwhile stays.
+     */
+    public Optional<UserDTO> authenticate(String username, String password) {
+        if (username == null || password == null) {
+            return Optional.empty();
+        }
+        Optional<User> found = userRepository.findByUsername(username);
+        if (found.isEmpty()) {
+            passwordHashingService.matchNothing(password);
+            return Optional.empty();
+        }
+        User user = found.get();
+        if (!passwordHashingService.matches(password, user.getPassword())) {
+            return Optional.empty();
+        }
+        if (passwordHashingService.needsRehash(user.getPassword())) {
+            userRepository.replacePassword(user.getId(), user.getPassword(), passwordHashingService.encode(password),
+                LocalDateTime.now());
+        }
+        return Optional.of(convertToDTO(user));
+    }
+    
+    @Cacheable(value = CacheConfig.USERS_BY_ID, unless = "#result == null")
+    @Transactional(readOnly = true)
     public Optional<UserDTO> getUserById(Long id) {
-        return userRepository.findById(id).map(this::convertToDTO);
+        return userRepository.findDtoById(id);
+    }
+    
+    /**
+     * The profile, or empty when the user does not exist or notModified accepts their data
+     * version. Read from the database in the same transaction as the version rather than
+     * from the lookup cache, which other nodes only drop when it expires.
+     */
+    @Transactional(readOnly = true)
+    public Optional<UserDTO> getUserByIdIfModified(Long id, LongPredicate notModified) {
+        Optional<Long> version = userRepository.findDataVersionById(id);
+        if (version.isEmpty() || notModified.test(version.get())) {
+            return Optional.empty();
+        }
+        return userRepository.findDtoById(id);
     }
     
+    /**
+     * Counter bumped by the database on every change to the user or their appointments
+     */
+    @Transactional(readOnly = true)
+    public Optional<Long> getDataVersion(Long id) {
+        return userRepository.findDataVersionById(id);
+    }
+    
+    @Cacheable(value = CacheConfig.USERS_BY_USERNAME, unless = "#result == null")
+    @Transactional(readOnly = true)
     public Optional<UserDTO> getUserByUsername(String username) {
-        return userRepository.findByUsername(username).map(this::convertToDTO);
+        return userRepository.findDtoByUsername(username);
     }
     
+    @Transactional(readOnly = true)
     public List<UserDTO> getAllUsers() {
-        return userRepository.findAll().stream()
-                .map(this::convertToDTO)
-                .collect(Collectors.toList());
+        return userRepository.findAllDtos();
     }
     
-    @Transactional
+    /**
+     * A password change does two hashes, which run first, outside any transaction, for the
+     * same reason as in createUser. The changes are then applied in a short transaction to
+     * the row re-read under lock, so concurrent edits of other fields are not overwritten,
+     * and the new password only if the hash it was verified against is still current.
+     */
     public UserDTO updateUser(Long id, UserUpdateDTO updateDTO) {
-        User user = userRepository.findById(id)
-                .orElseThrow(() -> new RuntimeException("User not found"));
+        String verifiedHash = null;
+        String newHash = null;
+        if (updateDTO.getNewPassword() != null && !updateDTO.getNewPassword().isEmpty()) {
+            verifiedHash = userRepository.findById(id)
+                    .orElseThrow(() -> new RuntimeException("User not found"))
+                    .getPassword();
+            if (updateDTO.getCurrentPassword() == null ||
+                !passwordHashingService.matches(updateDTO.getCurrentPassword(), verifiedHash)) {
+                throw new RuntimeException("Current password is incorrect");
+            }
+            newHash = passwordHashingService.encode(updateDTO.getNewPassword());
+        }
         
+        String expectedHash = verifiedHash;
+        String replacementHash = newHash;
+        User updatedUser = transactionTemplate.execute(status -> {
+            User user = userRepository.findByIdForUpdate(id)
+                    .orElseThrow(() -> new RuntimeException("User not found"));
+            applyUpdate(user, updateDTO);
+            if (replacementHash != null) {
+                if (!user.getPassword().equals(expectedHash)) {
+                    throw new RuntimeException("Password was changed meanwhile, please try again");
+                }
+                user.setPassword(replacementHash);
+            }
+            evictCachedUser(user);
+            return user;
+        });
+        return convertToDTO(updatedUser);
+    }
+    
+    private void applyUpdate(User user, UserUpdateDTO updateDTO) {
         if (updateDTO.getFullName() != null) {
             user.setFullName(updateDTO.getFullName());
         }
@@ -77,24 +175,14 @@ public class UserService {
             }
             user.setEmail(updateDTO.getEmail());
         }
-        if (updateDTO.getNewPassword() != null && !updateDTO.getNewPassword().isEmpty()) {
-            if (updateDTO.getCurrentPassword() == null || 
-                !passwordEncoder.matches(updateDTO.getCurrentPassword(), user.getPassword())) {
-                throw new RuntimeException("Current password is incorrect");
-            }
-            user.setPassword(passwordEncoder.encode(updateDTO.getNewPassword()));
-        }
-        
-        User updatedUser = userRepository.save(user);
-        return convertToDTO(updatedUser);
     }
     
     @Transactional
     public void deleteUser(Long id) {
-        if (!userRepository.existsById(id)) {
-            throw new RuntimeException("User not found");
-        }
-        userRepository.deleteById(id);
+        User user = userRepository.findById(id)
+                .orElseThrow(() -> new RuntimeException("User not found"));
+        userRepository.delete(user);
+        evictCachedUser(user);
     }
     
     public User getUserEntityById(Long id) {
@@ -102,6 +190,26 @@ public class UserService {
                 .orElseThrow(() -> new RuntimeException("User not found"));
     }
     
+    public Map<Long, User> getUserEntitiesByIds(Collection<Long> ids) {
+        return userRepository.findAllById(ids).stream()
+                .collect(Collectors.toMap(User::getId, Function.identity()));
+    }
+    
+    /**
+     * Drop the user from the lookup caches; deferred until commit by the transaction-aware cache manager
+     */
+    private void evictCachedUser(User user) {
+        evict(CacheConfig.USERS_BY_ID, user.getId());
+        evict(CacheConfig.USERS_BY_USERNAME, user.getUsername());
+    }
+    
+    private void evict(String cacheName, Object key) {
+        Cache cache = cacheManager.getCache(cacheName);
+        if (cache != null) {
+            cache.evict(key);
+        }
+    }
+    
     private UserDTO convertToDTO(User user) {
         UserDTO dto = new UserDTO();
         dto.setId(user.getId());
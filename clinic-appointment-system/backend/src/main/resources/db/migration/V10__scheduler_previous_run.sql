@@ -0,0 +1,5 @@
+-- Start of the latest run of each job that finished, carried into the next run so a job can
+-- tell how much it missed (the NO_SHOW sweep widens its window when its last run is too old).
+-- Existing jobs start with NULL, which reads as never run.
+
+ALTER TABLE scheduler_jobs ADD COLUMN previous_started_at TIMESTAMP;
@@ -0,0 +1,19 @@
+-- Bookings carry their length, and the database rejects two active bookings of the
+-- same doctor that overlap, whichever backend node wrote them. Databases baselined
+-- from schema.sql may already have duration_minutes from ddl-auto=update.
+-- If existing active bookings overlap, adding the constraint fails and the migration
+-- rolls back; resolve those bookings by hand and rerun.
+
+-- Required for the doctor/time-range exclusion constraint on appointments
+CREATE EXTENSION IF NOT EXISTS btree_gist;
+
+ALTER TABLE appointments ADD COLUMN IF NOT EXISTS duration_minutes INTEGER;
+UPDATE appointments SET duration_minutes = 30 WHERE duration_minutes IS NULL;
+ALTER TABLE appointments ALTER COLUMN duration_minutes SET DEFAULT 30;
+ALTER TABLE appointments ALTER COLUMN duration_minutes SET NOT NULL;
+
+ALTER TABLE appointments DROP CONSTRAINT IF EXISTS ex_appointments_doctor_slot;
+ALTER TABLE appointments ADD CONSTRAINT ex_appointments_doctor_slot EXCLUDE USING gist (
+    doctor_name WITH =,
+    tsrange(appointment_date, appointment_date + duration_minutes * INTERVAL '1 minute') WITH &&
+) WHERE (status IN ('SCHEDULED', 'CONFIRMED'));
@@ -0,0 +1,6 @@
+-- IDs are allocated by Hibernate in pooled blocks of 50 so inserts can be batched;
+-- the sequence increment must match the allocationSize of the entity mappings.
+-- The next value lands past every id already handed out, so the first pooled block
+-- cannot collide with existing rows.
+ALTER SEQUENCE users_id_seq INCREMENT BY 50;
+ALTER SEQUENCE appointments_id_seq INCREMENT BY 50;
@@ -0,0 +1,2 @@
+-- Retention purge (deleteExpiredBatch): finished bookings by status, oldest update first
+CREATE INDEX IF NOT EXISTS idx_appointments_status_updated_at ON appointments (status, updated_at);
@@ -0,0 +1,44 @@
+-- Replace the single-column indexes with composites that match how the repository
+-- queries filter and order. Keyset pages seek on (appointment_date, id) after an
+-- equality filter, so each composite ends in those two columns and a page is one
+-- index range scan with no sort.
+
+-- Redundant: users.username and users.email already have unique indexes from their constraints
+DROP INDEX IF EXISTS idx_users_email;
+DROP INDEX IF EXISTS idx_users_username;
+
+-- Superseded by the composites below (each was a prefix or a less selective variant)
+DROP INDEX IF EXISTS idx_appointments_user_id;
+DROP INDEX IF EXISTS idx_appointments_date;
+DROP INDEX IF EXISTS idx_appointments_status;
+
+-- Same indexes under the names Hibernate used when the schema was created by ddl-auto=update
+DROP INDEX IF EXISTS idx_user_id;
+DROP INDEX IF EXISTS idx_appointment_date;
+DROP INDEX IF EXISTS idx_status;
+DROP INDEX IF EXISTS idx_status_updated_at;
+
+-- Per-user history, newest first (scanned backwards), and the FK cascade from users
+CREATE INDEX IF NOT EXISTS idx_appointments_user_date
+    ON appointments (user_id, appointment_date, id);
+
+-- Status pages, status exports and findByAppointmentDateBetweenAndStatus
+CREATE INDEX IF NOT EXISTS idx_appointments_status_date
+    ON appointments (status, appointment_date, id);
+
+-- Doctor-filtered pages and exports
+CREATE INDEX IF NOT EXISTS idx_appointments_doctor_date
+    ON appointments (doctor_name, appointment_date, id);
+
+-- Unfiltered or date-range-only pages and exports
+CREATE INDEX IF NOT EXISTS idx_appointments_date_id
+    ON appointments (appointment_date, id);
+
+-- Active bookings only: loading the in-memory schedule (findActiveScheduleEntries) and the
+-- nightly NO_SHOW sweep. Finished rows, which dominate over time, never enter this index.
+-- Overlap checks for active bookings are served by the GiST index behind ex_appointments_doctor_slot.
+CREATE INDEX IF NOT EXISTS idx_appointments_active_date
+    ON appointments (appointment_date)
+    WHERE status IN ('SCHEDULED', 'CONFIRMED');
+
+-- Retention purge (deleteExpiredBatch) keeps using idx_appointments_status_updated_at from V1_3
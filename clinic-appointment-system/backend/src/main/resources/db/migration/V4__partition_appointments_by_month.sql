@@ -0,0 +1,128 @@
+-- Range-partition appointments by month of appointment_date. Date-bounded queries
+-- (pages with from/to, the nightly NO_SHOW sweep, loading the schedule) prune to the
+-- months they touch, and old months leave the table by DETACH instead of row deletes.
+--
+-- Partitions are named appointments_pYYYYMM. Months beyond the created horizon land in
+-- appointments_default until AppointmentPartitionMaintenance creates their partition.
+
+-- Creates the partition for the month containing p_month unless it already exists.
+-- Rows already parked in the default partition for that month are moved into it.
+CREATE OR REPLACE FUNCTION appointments_create_partition(p_month DATE) RETURNS BOOLEAN AS $$
+DECLARE
+    v_from TIMESTAMP := date_trunc('month', p_month::TIMESTAMP);
+    v_to TIMESTAMP := date_trunc('month', p_month::TIMESTAMP) + INTERVAL '1 month';
+    v_name TEXT := 'appointments_p' || to_char(p_month, 'YYYYMM');
+BEGIN
+    -- Several nodes run maintenance; only one creates a given month
+    PERFORM pg_advisory_xact_lock(hashtext('appointments_partitions'));
+    IF to_regclass(v_name) IS NOT NULL THEN
+        RETURN FALSE;
+    END IF;
+    PERFORM set_config('lock_timeout', '5s', true);
+
+    EXECUTE format('CREATE TABLE %I (LIKE appointments INCLUDING DEFAULTS)', v_name);
+    -- Matches the partition bound, so ATTACH can skip scanning the new table
+    EXECUTE format('ALTER TABLE %I ADD CONSTRAINT %I CHECK (appointment_date >= %L AND appointment_date < %L)',
+        v_name, v_name || '_bounds', v_from, v_to);
+    -- Exclusion constraints are not inherited from a partitioned parent, so every
+    -- partition carries its own. A booking cannot overlap one in another month
+    -- unless it runs past midnight at month end, which clinic hours rule out.
+    EXECUTE format('ALTER TABLE %I ADD CONSTRAINT %I EXCLUDE USING gist ('
+        || 'doctor_id WITH =, '
+        || 'tsrange(appointment_date, appointment_date + duration_minutes * INTERVAL ''1 minute'') WITH &&'
+        || ') WHERE (status IN (''SCHEDULED'', ''CONFIRMED''))',
+        v_name, 'ex_' || v_name || '_doctor_slot');
+
+    IF to_regclass('appointments_default') IS NOT NULL THEN
+        EXECUTE format('WITH moved AS ('
+            || 'DELETE FROM appointments_default WHERE appointment_date >= %L AND appointment_date < %L RETURNING *'
+            || ') INSERT INTO %I SELECT * FROM moved', v_from, v_to, v_name);
+    END IF;
+
+    EXECUTE format('ALTER TABLE appointments ATTACH PARTITION %I FOR VALUES FROM (%L) TO (%L)', v_name, v_from, v_to);
+    EXECUTE format('ALTER TABLE %I DROP CONSTRAINT %I', v_name, v_name || '_bounds');
+    RETURN TRUE;
+END
+$$ LANGUAGE plpgsql;
+
+-- Detaches a partition and moves it into p_archive_schema, where it stays queryable
+-- but is no longer scanned, indexed or vacuumed as part of appointments
+CREATE OR REPLACE FUNCTION appointments_archive_partition(p_partition TEXT, p_archive_schema TEXT) RETURNS VOID AS $$
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('appointments_partitions'));
+    PERFORM set_config('lock_timeout', '5s', true);
+    EXECUTE format('ALTER TABLE appointments DETACH PARTITION %I', p_partition);
+    EXECUTE format('CREATE SCHEMA IF NOT EXISTS %I', p_archive_schema);
+    EXECUTE format('ALTER TABLE %I SET SCHEMA %I', p_partition, p_archive_schema);
+END
+$$ LANGUAGE plpgsql;
+
+-- Move the existing table aside and free the names its constraints and indexes use
+ALTER TABLE appointments RENAME TO appointments_unpartitioned;
+ALTER TABLE appointments_unpartitioned RENAME CONSTRAINT appointments_pkey TO appointments_unpartitioned_pkey;
+ALTER TABLE appointments_unpartitioned DROP CONSTRAINT ex_appointments_doctor_slot;
+DROP INDEX IF EXISTS idx_appointments_user_date;
+DROP INDEX IF EXISTS idx_appointments_status_date;
+DROP INDEX IF EXISTS idx_appointments_doctor_date;
+DROP INDEX IF EXISTS idx_appointments_date_id;
+DROP INDEX IF EXISTS idx_appointments_active_date;
+DROP INDEX IF EXISTS idx_appointments_status_updated_at;
+ALTER TABLE appointments_unpartitioned ALTER COLUMN id DROP DEFAULT;
+ALTER SEQUENCE appointments_id_seq OWNED BY NONE;
+
+-- The partition key must be part of the primary key; ids still come from the
+-- sequence alone, so they stay unique without a global index
+CREATE TABLE appointments (
+    id BIGINT NOT NULL DEFAULT nextval('appointments_id_seq'),
+    user_id BIGINT NOT NULL,
+    patient_name VARCHAR(100) NOT NULL,
+    patient_phone VARCHAR(15),
+    appointment_date TIMESTAMP NOT NULL,
+    duration_minutes INTEGER NOT NULL DEFAULT 30,
+    doctor_id INTEGER NOT NULL,
+    reason VARCHAR(500),
+    status VARCHAR(20) NOT NULL DEFAULT 'SCHEDULED',
+    notes VARCHAR(255),
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    updated_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    CONSTRAINT appointments_pkey PRIMARY KEY (id, appointment_date),
+    CONSTRAINT fk_user FOREIGN KEY (user_id) REFERENCES users(id) ON DELETE CASCADE,
+    CONSTRAINT fk_appointments_doctor FOREIGN KEY (doctor_id) REFERENCES doctors(id)
+) PARTITION BY RANGE (appointment_date);
+
+ALTER SEQUENCE appointments_id_seq OWNED BY appointments.id;
+
+-- Created on the parent, so every partition gets its own copy, including ones attached later
+CREATE INDEX idx_appointments_user_date ON appointments (user_id, appointment_date, id);
+CREATE INDEX idx_appointments_status_date ON appointments (status, appointment_date, id);
+CREATE INDEX idx_appointments_doctor_date ON appointments (doctor_id, appointment_date, id);
+CREATE INDEX idx_appointments_date_id ON appointments (appointment_date, id);
+CREATE INDEX idx_appointments_active_date ON appointments (appointment_date)
+    WHERE status IN ('SCHEDULED', 'CONFIRMED');
+CREATE INDEX idx_appointments_status_updated_at ON appointments (status, updated_at);
+
+CREATE TABLE appointments_default PARTITION OF appointments DEFAULT;
+ALTER TABLE appointments_default ADD CONSTRAINT ex_appointments_default_doctor_slot EXCLUDE USING gist (
+    doctor_id WITH =,
+    tsrange(appointment_date, appointment_date + duration_minutes * INTERVAL '1 minute') WITH &&
+) WHERE (status IN ('SCHEDULED', 'CONFIRMED'));
+
+-- Every month from the oldest appointment through a year ahead
+DO $$
+BEGIN
+    PERFORM appointments_create_partition(month::DATE)
+    FROM generate_series(
+        date_trunc('month', LEAST((SELECT min(appointment_date) FROM appointments_unpartitioned), LOCALTIMESTAMP)),
+        date_trunc('month', LOCALTIMESTAMP) + INTERVAL '12 months',
+        INTERVAL '1 month'
+    ) AS month;
+END
+$$;
+
+INSERT INTO appointments (id, user_id, patient_name, patient_phone, appointment_date, duration_minutes,
+                          doctor_id, reason, status, notes, created_at, updated_at)
+SELECT id, user_id, patient_name, patient_phone, appointment_date, duration_minutes,
+       doctor_id, reason, status, notes, created_at, updated_at
+FROM appointments_unpartitioned;
+
+DROP TABLE appointments_unpartitioned;
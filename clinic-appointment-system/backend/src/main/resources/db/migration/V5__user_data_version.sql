@@ -0,0 +1,60 @@
+-- Per-user change counter behind the ETags on /api/users/{id} and /api/appointments/user/{id}.
+-- It moves on every change to the user row and on every insert, update or delete of one of
+-- their appointments, whichever path makes it, so a conditional GET only has to compare it.
+
+ALTER TABLE users ADD COLUMN data_version BIGINT NOT NULL DEFAULT 0;
+
+-- Profile changes; a bump made by the appointment triggers below is left as it is
+CREATE OR REPLACE FUNCTION users_bump_data_version() RETURNS TRIGGER AS $$
+BEGIN
+    IF NEW.data_version = OLD.data_version THEN
+        NEW.data_version := OLD.data_version + 1;
+    END IF;
+    RETURN NEW;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_users_data_version BEFORE UPDATE ON users
+    FOR EACH ROW EXECUTE FUNCTION users_bump_data_version();
+
+-- Statement-level with transition tables, so a batch of the nightly sweep bumps each
+-- affected user once rather than once per row. Declared on the partitioned parent, the
+-- triggers see rows of every partition.
+CREATE OR REPLACE FUNCTION appointments_bump_user_data_version() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        UPDATE users SET data_version = data_version + 1
+        WHERE id IN (SELECT user_id FROM new_rows);
+    ELSIF TG_OP = 'UPDATE' THEN
+        UPDATE users SET data_version = data_version + 1
+        WHERE id IN (SELECT user_id FROM new_rows UNION SELECT user_id FROM old_rows);
+    ELSE
+        UPDATE users SET data_version = data_version + 1
+        WHERE id IN (SELECT user_id FROM old_rows);
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_appointments_inserted AFTER INSERT ON appointments
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION appointments_bump_user_data_version();
+CREATE TRIGGER trg_appointments_updated AFTER UPDATE ON appointments
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION appointments_bump_user_data_version();
+CREATE TRIGGER trg_appointments_deleted AFTER DELETE ON appointments
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION appointments_bump_user_data_version();
+
+-- Detaching a partition fires no row triggers, yet its rows drop out of every list
+CREATE OR REPLACE FUNCTION appointments_archive_partition(p_partition TEXT, p_archive_schema TEXT) RETURNS VOID AS $$
+BEGIN
+    PERFORM pg_advisory_xact_lock(hashtext('appointments_partitions'));
+    PERFORM set_config('lock_timeout', '5s', true);
+    EXECUTE format('ALTER TABLE appointments DETACH PARTITION %I', p_partition);
+    EXECUTE format('UPDATE users SET data_version = data_version + 1 '
+        || 'WHERE id IN (SELECT DISTINCT user_id FROM %I)', p_partition);
+    EXECUTE format('CREATE SCHEMA IF NOT EXISTS %I', p_archive_schema);
+    EXECUTE format('ALTER TABLE %I SET SCHEMA %I', p_partition, p_archive_schema);
+END
+$$ LANGUAGE plpgsql;
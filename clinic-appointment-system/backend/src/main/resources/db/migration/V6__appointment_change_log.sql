@@ -0,0 +1,58 @@
+-- Change log behind GET /api/appointments/changes. Every insert, update and delete of an
+-- appointment, whichever path makes it (the API, the nightly sweep, retention purges, a
+-- cascade from a deleted user), adds one row per appointment, so hard deletes leave a tombstone.
+--
+-- Rows are read in (xid, seq) order and only once their transaction id is below the reader's
+-- snapshot xmin: by then every transaction that could still add a row sorting before them has
+-- finished, so a client that resumes after the last row it saw never misses a late commit.
+
+CREATE TABLE appointment_changes (
+    seq BIGSERIAL PRIMARY KEY,
+    xid BIGINT NOT NULL DEFAULT pg_current_xact_id()::text::bigint,
+    appointment_id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    doctor_id INTEGER NOT NULL,
+    change_type VARCHAR(10) NOT NULL,
+    changed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP
+);
+
+CREATE INDEX idx_appointment_changes_xid_seq ON appointment_changes (xid, seq);
+CREATE INDEX idx_appointment_changes_user_xid_seq ON appointment_changes (user_id, xid, seq);
+CREATE INDEX idx_appointment_changes_doctor_xid_seq ON appointment_changes (doctor_id, xid, seq);
+
+-- Highest (xid, seq) removed by pruning; older sync tokens may have missed rows and are refused
+CREATE TABLE appointment_changes_horizon (
+    xid BIGINT NOT NULL,
+    seq BIGINT NOT NULL
+);
+INSERT INTO appointment_changes_horizon (xid, seq) VALUES (0, 0);
+
+-- An update that moves an appointment to another user or doctor is logged under both the old
+-- and the new one, so a mirror filtered on either learns about it
+CREATE OR REPLACE FUNCTION appointments_record_changes() RETURNS TRIGGER AS $$
+BEGIN
+    IF TG_OP = 'INSERT' THEN
+        INSERT INTO appointment_changes (appointment_id, user_id, doctor_id, change_type)
+        SELECT id, user_id, doctor_id, 'CREATED' FROM new_rows;
+    ELSIF TG_OP = 'UPDATE' THEN
+        INSERT INTO appointment_changes (appointment_id, user_id, doctor_id, change_type)
+        SELECT id, user_id, doctor_id, 'UPDATED' FROM new_rows
+        UNION
+        SELECT id, user_id, doctor_id, 'UPDATED' FROM old_rows;
+    ELSE
+        INSERT INTO appointment_changes (appointment_id, user_id, doctor_id, change_type)
+        SELECT id, user_id, doctor_id, 'DELETED' FROM old_rows;
+    END IF;
+    RETURN NULL;
+END
+$$ LANGUAGE plpgsql;
+
+CREATE TRIGGER trg_appointments_log_inserted AFTER INSERT ON appointments
+    REFERENCING NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION appointments_record_changes();
+CREATE TRIGGER trg_appointments_log_updated AFTER UPDATE ON appointments
+    REFERENCING OLD TABLE AS old_rows NEW TABLE AS new_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION appointments_record_changes();
+CREATE TRIGGER trg_appointments_log_deleted AFTER DELETE ON appointments
+    REFERENCING OLD TABLE AS old_rows
+    FOR EACH STATEMENT EXECUTE FUNCTION appointments_record_changes();
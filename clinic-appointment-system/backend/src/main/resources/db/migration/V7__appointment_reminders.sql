@@ -0,0 +1,20 @@
+-- Dispatch state of patient reminders (ReminderDispatcher). A reminder is claimed by
+-- inserting its row before it is handed to the sender, so a restart, or a second node
+-- holding the same reminder in its wheel, can never send it twice.
+--
+-- The appointment date is part of the key: a rescheduled appointment is due for fresh
+-- reminders, while the row for the old date keeps a late timer from firing.
+
+CREATE TABLE appointment_reminders (
+    appointment_id BIGINT NOT NULL,
+    kind VARCHAR(20) NOT NULL,
+    appointment_date TIMESTAMP NOT NULL,
+    status VARCHAR(10) NOT NULL DEFAULT 'CLAIMED',
+    claimed_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    sent_at TIMESTAMP,
+    error VARCHAR(500),
+    PRIMARY KEY (appointment_id, kind, appointment_date)
+);
+
+-- Pruning of reminders for appointments that are long past
+CREATE INDEX idx_appointment_reminders_date ON appointment_reminders (appointment_date);
@@ -0,0 +1,27 @@
+-- Transactional outbox: appointment changes are inserted here in the transaction that makes
+-- them, and OutboxRelay hands them to the in-process consumers after commit. A row is
+-- deleted once every consumer has taken it; a batch that fails is retried with backoff and
+-- parked as FAILED after clinic.outbox.max-attempts.
+
+-- Steps by 50 to match the pooled id allocation of the entity, so inserts are batched
+CREATE SEQUENCE appointment_outbox_id_seq INCREMENT BY 50;
+
+CREATE TABLE appointment_outbox (
+    id BIGINT PRIMARY KEY DEFAULT nextval('appointment_outbox_id_seq'),
+    event_type VARCHAR(10) NOT NULL,
+    appointment_id BIGINT NOT NULL,
+    user_id BIGINT NOT NULL,
+    doctor_id INTEGER NOT NULL,
+    appointment_date TIMESTAMP NOT NULL,
+    appointment_status VARCHAR(20) NOT NULL,
+    status VARCHAR(10) NOT NULL DEFAULT 'PENDING',
+    attempts INTEGER NOT NULL DEFAULT 0,
+    available_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    created_at TIMESTAMP NOT NULL DEFAULT CURRENT_TIMESTAMP,
+    last_error VARCHAR(500)
+);
+
+ALTER SEQUENCE appointment_outbox_id_seq OWNED BY appointment_outbox.id;
+
+-- Only what is waiting is indexed, so the relay's poll stays cheap however much has failed
+CREATE INDEX idx_appointment_outbox_pending ON appointment_outbox (id) WHERE status = 'PENDING';
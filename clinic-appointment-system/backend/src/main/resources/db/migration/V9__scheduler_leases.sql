@@ -0,0 +1,29 @@
+-- Coordination of the cleanup jobs across backend nodes (ClusterJobRunner). Every node
+-- fires each job on its cron; the first one in for a fire time starts the run and splits it
+-- into shards, and every node then claims shards under a lease until none are left. A node
+-- that dies mid-shard lets its lease lapse and another node takes the shard over.
+
+CREATE TABLE scheduler_jobs (
+    job VARCHAR(50) PRIMARY KEY,
+    -- Cron fire time of the latest run; a later fire time starts a new run
+    run_at TIMESTAMP,
+    status VARCHAR(10),
+    started_by VARCHAR(100),
+    started_at TIMESTAMP,
+    completed_at TIMESTAMP,
+    rows_processed BIGINT
+);
+
+CREATE TABLE scheduler_job_shards (
+    job VARCHAR(50) NOT NULL REFERENCES scheduler_jobs(job),
+    shard INTEGER NOT NULL,
+    run_at TIMESTAMP NOT NULL,
+    -- Half-open id range [from_id, to_id) of the rows this shard covers
+    from_id BIGINT NOT NULL,
+    to_id BIGINT NOT NULL,
+    owner VARCHAR(100),
+    lease_until TIMESTAMP,
+    completed_at TIMESTAMP,
+    rows_processed BIGINT,
+    PRIMARY KEY (job, shard)
+);
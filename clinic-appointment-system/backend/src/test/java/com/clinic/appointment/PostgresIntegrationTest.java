@@ -0,0 +1,57 @@
+package com.clinic.appointment;
+
+import org.junit.jupiter.api.Assumptions;
+import org.junit.jupiter.api.BeforeAll;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
+import org.testcontainers.DockerClientFactory;
+import org.testcontainers.containers.PostgreSQLContainer;
+
+/**
+ * Base of the tests that run the application against PostgreSQL, migrated by Flyway as
+ * in production. Uses the database at TEST_DATABASE_URL (with TEST_DATABASE_USERNAME and
+ * TEST_DATABASE_PASSWORD) when set, otherwise one Testcontainers container shared by all
+ * test classes. Without either the tests are skipped.
+ */
+@SpringBootTest
+@ActiveProfiles("test")
+public abstract class PostgresIntegrationTest {
+    
+    private static final String EXTERNAL_URL = System.getenv("TEST_DATABASE_URL");
+    
+    private static PostgreSQLContainer<?> container;
+    
+    @BeforeAll
+    static void requireDatabase() {
+        Assumptions.assumeTrue(usesExternalDatabase() || DockerClientFactory.instance().isDockerAvailable(),
+            "Neither TEST_DATABASE_URL nor Docker is available");
+    }
+    
+    @DynamicPropertySource
+    static void database(DynamicPropertyRegistry registry) {
+        if (usesExternalDatabase()) {
+            registry.add("spring.datasource.url", () -> EXTERNAL_URL);
+            registry.add("spring.datasource.username", () -> System.getenv().getOrDefault("TEST_DATABASE_USERNAME", "postgres"));
+            registry.add("spring.datasource.password", () -> System.getenv().getOrDefault("TEST_DATABASE_PASSWORD", ""));
+            return;
+        }
+        PostgreSQLContainer<?> postgres = container();
+        registry.add("spring.datasource.url", postgres::getJdbcUrl);
+        registry.add("spring.datasource.username", postgres::getUsername);
+        registry.add("spring.datasource.password", postgres::getPassword);
+    }
+    
+    private static boolean usesExternalDatabase() {
+        return EXTERNAL_URL != null && !EXTERNAL_URL.isBlank();
+    }
+    
+    private static synchronized PostgreSQLContainer<?> container() {
+        if (container == null) {
+            container = new PostgreSQLContainer<>("postgres:16-alpine");
+            container.start();
+        }
+        return container;
+    }
+}
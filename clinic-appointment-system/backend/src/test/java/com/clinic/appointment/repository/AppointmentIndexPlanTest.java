@@ -0,0 +1,173 @@
+package com.clinic.appointment.repository;
+
+import com.clinic.appointment.PostgresIntegrationTest;
+import com.clinic.appointment.dto.AppointmentSearchCriteria;
+import com.clinic.appointment.model.Appointment.AppointmentStatus;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The repository's hot queries are planned onto the indexes the migrations create for
+ * them. Each query is captured as the repository sends it, with its parameters, and
+ * replayed under EXPLAIN. Partitions carry their own copy of each index, named after the
+ * partition and the indexed columns, so plans are matched on the column part of the
+ * name. Partitions the seed leaves empty may be planned any way.
+ */
+class AppointmentIndexPlanTest extends PostgresIntegrationTest {
+    
+    private static final int USERS = 100;
+    private static final int DOCTORS = 40;
+    private static final int APPOINTMENTS = 40_000;
+    private static final int PAGE = 21;
+    // A Sort step, as opposed to the Sort Key of a Merge Append over ordered index scans
+    private static final String SORT_NODE = "(?m)^\\s*(->\\s+)?Sort\\s+\\(";
+    private static final String RUN = Long.toString(System.nanoTime(), 36);
+    private static final LocalDateTime BASE = LocalDateTime.now().truncatedTo(ChronoUnit.HOURS).minusDays(10);
+    // Set by the seed; without a database it never runs and there is nothing to clean up
+    private static JdbcTemplate seeded;
+    
+    @TestConfiguration
+    static class Recording {
+        
+        @Bean
+        static StatementRecorder statementRecorder() {
+            return new StatementRecorder();
+        }
+    }
+    
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+    
+    @Autowired
+    private StatementRecorder statementRecorder;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    /**
+     * Every doctor gets one booking per half hour from ten days ago onwards; past ones
+     * are completed, every tenth is cancelled and the rest are scheduled. Runs after the
+     * base class has checked that a database is available.
+     */
+    @BeforeAll
+    static void seed(@Autowired JdbcTemplate jdbcTemplate) {
+        seeded = jdbcTemplate;
+        jdbcTemplate.update("INSERT INTO users (username, email, password, full_name, role, active) " +
+            "SELECT 'plan-' || ? || '-' || g, 'plan-' || ? || '-' || g || '@clinic.test', 'x', 'Plan Patient', 'USER', true " +
+            "FROM generate_series(1, ?) g", RUN, RUN, USERS);
+        jdbcTemplate.update("INSERT INTO doctors (name) SELECT 'Dr Plan ' || ? || ' ' || g FROM generate_series(1, ?) g",
+            RUN, DOCTORS);
+        jdbcTemplate.update("INSERT INTO appointments (user_id, patient_name, appointment_date, doctor_id, status, updated_at) " +
+            "SELECT u.ids[1 + g % ?], 'Plan Patient', slot, d.ids[1 + g % ?], " +
+            "CASE WHEN g % 10 = 0 THEN 'CANCELLED' WHEN slot < LOCALTIMESTAMP THEN 'COMPLETED' ELSE 'SCHEDULED' END, slot " +
+            "FROM generate_series(0, ? - 1) g " +
+            "CROSS JOIN LATERAL (SELECT ?::timestamp + (g / ?) * INTERVAL '30 minutes' AS slot) s " +
+            "CROSS JOIN (SELECT array_agg(id ORDER BY id) AS ids FROM users WHERE username LIKE 'plan-' || ? || '-%') u " +
+            "CROSS JOIN (SELECT array_agg(id ORDER BY id) AS ids FROM doctors WHERE name LIKE 'Dr Plan ' || ? || ' %') d",
+            USERS, DOCTORS, APPOINTMENTS, BASE, DOCTORS, RUN, RUN);
+        jdbcTemplate.execute("ANALYZE users");
+        jdbcTemplate.execute("ANALYZE doctors");
+        jdbcTemplate.execute("ANALYZE appointments");
+    }
+    
+    @AfterAll
+    static void cleanUp() {
+        if (seeded == null) {
+            return;
+        }
+        seeded.update("DELETE FROM users WHERE username LIKE 'plan-' || ? || '-%'", RUN);
+        seeded.update("DELETE FROM doctors WHERE name LIKE 'Dr Plan ' || ? || ' %'", RUN);
+        seeded = null;
+    }
+    
+    @Test
+    void userHistoryPageSeeksTheUserDateIndex() {
+        AppointmentSearchCriteria criteria = new AppointmentSearchCriteria();
+        criteria.setUserId(firstUserId());
+        criteria.setDescending(true);
+        
+        assertThat(plan(() -> appointmentRepository.findPage(criteria, null, PAGE)))
+            .contains("_user_id_appointment_date_id_idx")
+            .doesNotContainPattern(SORT_NODE);
+    }
+    
+    @Test
+    void statusPageSeeksTheStatusDateIndex() {
+        AppointmentSearchCriteria criteria = new AppointmentSearchCriteria();
+        criteria.setStatus(AppointmentStatus.CANCELLED);
+        criteria.setFrom(BASE.plusDays(3));
+        
+        assertThat(plan(() -> appointmentRepository.findPage(criteria, null, PAGE)))
+            .contains("_status_appointment_date_id_idx")
+            .doesNotContainPattern(SORT_NODE);
+    }
+    
+    @Test
+    void doctorPageSeeksTheDoctorDateIndex() {
+        AppointmentSearchCriteria criteria = new AppointmentSearchCriteria();
+        criteria.setDoctorId(firstDoctorId());
+        criteria.setFrom(BASE.plusDays(3));
+        
+        assertThat(plan(() -> appointmentRepository.findPage(criteria, null, PAGE)))
+            .contains("_doctor_id_appointment_date_id_idx")
+            .doesNotContainPattern(SORT_NODE);
+    }
+    
+    @Test
+    void noShowSweepReadsOnlyActiveBookings() {
+        assertThat(plan(() -> appointmentRepository.markPastAppointmentsAsNoShow(BASE.plusDays(9), BASE.plusDays(10),
+            Long.MIN_VALUE, Long.MAX_VALUE, 1000)))
+            .contains("_appointment_date_idx");
+    }
+    
+    @Test
+    void retentionPurgeSeeksTheStatusUpdatedAtIndex() {
+        assertThat(plan(() -> appointmentRepository.deleteExpiredBatch(AppointmentStatus.CANCELLED.name(), BASE.plusHours(6),
+            Long.MIN_VALUE, Long.MAX_VALUE, 500)))
+            .contains("_status_updated_at_idx");
+    }
+    
+    /**
+     * Plan of the one statement the repository call sends. The call runs in a transaction
+     * that is rolled back, so sweeps and purges leave the seed as it was.
+     */
+    private String plan(Runnable repositoryCall) {
+        TransactionTemplate transactionTemplate = new TransactionTemplate(transactionManager);
+        List<StatementRecorder.Statement> statements = statementRecorder.record(() ->
+            transactionTemplate.executeWithoutResult(status -> {
+                repositoryCall.run();
+                status.setRollbackOnly();
+            }));
+        assertThat(statements).hasSize(1);
+        StatementRecorder.Statement statement = statements.get(0);
+        return String.join("\n", jdbcTemplate.query("EXPLAIN " + statement.sql(), ps -> {
+            for (int i = 0; i < statement.parameters().size(); i++) {
+                ps.setObject(i + 1, statement.parameters().get(i));
+            }
+        }, (rs, rowNum) -> rs.getString(1)));
+    }
+    
+    private Long firstUserId() {
+        return jdbcTemplate.queryForObject("SELECT min(id) FROM users WHERE username LIKE 'plan-' || ? || '-%'", Long.class, RUN);
+    }
+    
+    private Integer firstDoctorId() {
+        return jdbcTemplate.queryForObject("SELECT min(id) FROM doctors WHERE name LIKE 'Dr Plan ' || ? || ' %'", Integer.class, RUN);
+    }
+}
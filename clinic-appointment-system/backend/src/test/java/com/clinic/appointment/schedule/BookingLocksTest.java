@@ -0,0 +1,62 @@
+package com.clinic.appointment.schedule;
+
+import com.clinic.appointment.exception.BookingBusyException;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionSynchronizationUtils;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Stripes are held until the transaction completes; a booking that cannot get its
+ * doctor's stripe in time fails as busy rather than as a bad request.
+ */
+class BookingLocksTest {
+    
+    private final BookingLocks locks = new BookingLocks(16, 50);
+    
+    @Test
+    void aStripeHeldPastTheTimeoutFailsAsBusy() {
+        inTransaction(() -> {
+            locks.lockUntilCompletion(7);
+            assertThat(CompletableFuture.supplyAsync(() -> attempt(List.of(3, 7))).join())
+                .isInstanceOf(BookingBusyException.class);
+        });
+    }
+    
+    @Test
+    void aStripeIsReleasedWhenTheTransactionCompletes() {
+        inTransaction(() -> locks.lockUntilCompletion(7));
+        assertThat(CompletableFuture.supplyAsync(() -> attempt(List.of(3, 7))).join()).isNull();
+    }
+    
+    @Test
+    void lockingOutsideATransactionIsRejected() {
+        assertThatThrownBy(() -> locks.lockUntilCompletion(7)).isInstanceOf(IllegalStateException.class);
+    }
+    
+    private RuntimeException attempt(List<Integer> doctorIds) {
+        try {
+            inTransaction(() -> locks.lockAllUntilCompletion(doctorIds));
+            return null;
+        } catch (RuntimeException e) {
+            return e;
+        }
+    }
+    
+    private static void inTransaction(Runnable work) {
+        TransactionSynchronizationManager.initSynchronization();
+        try {
+            work.run();
+        } finally {
+            List<TransactionSynchronization> synchronizations = TransactionSynchronizationManager.getSynchronizations();
+            TransactionSynchronizationManager.clearSynchronization();
+            TransactionSynchronizationUtils.invokeAfterCompletion(synchronizations, TransactionSynchronization.STATUS_COMMITTED);
+        }
+    }
+}
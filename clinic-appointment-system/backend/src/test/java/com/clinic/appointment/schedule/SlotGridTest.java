@@ -0,0 +1,31 @@
+package com.clinic.appointment.schedule;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * A visit fits the opening hours only if it starts and ends within the same day's hours,
+ * which also keeps it inside its monthly partition
+ */
+class SlotGridTest {
+    
+    private static final LocalDate MONTH_END = LocalDate.of(2030, 1, 31);
+    
+    private final SlotGrid grid = new SlotGrid("08:00", "20:00", 15);
+    
+    @Test
+    void visitsWithinTheDaysHoursFit() {
+        assertThat(grid.withinOpeningHours(MONTH_END.atTime(8, 0), 30)).isTrue();
+        assertThat(grid.withinOpeningHours(MONTH_END.atTime(19, 30), 30)).isTrue();
+    }
+    
+    @Test
+    void visitsOutsideTheDaysHoursDoNot() {
+        assertThat(grid.withinOpeningHours(MONTH_END.atTime(7, 45), 30)).isFalse();
+        assertThat(grid.withinOpeningHours(MONTH_END.atTime(19, 45), 30)).isFalse();
+        assertThat(grid.withinOpeningHours(MONTH_END.atTime(23, 45), 30)).isFalse();
+    }
+}
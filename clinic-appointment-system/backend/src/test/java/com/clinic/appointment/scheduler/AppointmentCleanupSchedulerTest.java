@@ -0,0 +1,121 @@
+package com.clinic.appointment.scheduler;
+
+import com.clinic.appointment.PostgresIntegrationTest;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Nested;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.context.TestPropertySource;
+
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The NO_SHOW sweep stays within its lookback window only while the previous sweep
+ * finished inside it, whether jobs run across the cluster or on each node alone
+ */
+@TestPropertySource(properties = "clinic.scheduler.cluster.enabled=true")
+class AppointmentCleanupSchedulerTest extends PostgresIntegrationTest {
+    
+    private static final String JOB = "mark-no-show:NO_SHOW";
+    
+    @Autowired
+    private AppointmentCleanupScheduler cleanupScheduler;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    private Long userId;
+    private Integer doctorId;
+    
+    @BeforeEach
+    void setUp() {
+        jdbcTemplate.update("DELETE FROM scheduler_job_shards WHERE job = ?", JOB);
+        jdbcTemplate.update("DELETE FROM scheduler_jobs WHERE job = ?", JOB);
+        String run = Long.toString(System.nanoTime(), 36);
+        userId = jdbcTemplate.queryForObject("INSERT INTO users (username, email, password, full_name, role, active) " +
+            "VALUES (?, ?, 'x', 'No Show', 'USER', true) RETURNING id", Long.class, "noshow-" + run, "noshow-" + run + "@clinic.test");
+        doctorId = jdbcTemplate.queryForObject(
+            "INSERT INTO doctors (name) VALUES (?) RETURNING id", Integer.class, "Dr No Show " + run);
+    }
+    
+    @Test
+    void firstSweepReachesPastTheLookbackWindow() {
+        Long old = bookedDaysAgo(90);
+        Long recent = bookedDaysAgo(2);
+        
+        cleanupScheduler.markPastAppointmentsAsNoShow();
+        
+        assertThat(status(old)).isEqualTo("NO_SHOW");
+        assertThat(status(recent)).isEqualTo("NO_SHOW");
+    }
+    
+    @Test
+    void sweepAfterARecentOneStaysInTheWindow() {
+        finishedRunStartedDaysAgo(1);
+        Long old = bookedDaysAgo(90);
+        Long recent = bookedDaysAgo(2);
+        
+        cleanupScheduler.markPastAppointmentsAsNoShow();
+        
+        assertThat(status(old)).isEqualTo("SCHEDULED");
+        assertThat(status(recent)).isEqualTo("NO_SHOW");
+    }
+    
+    @Test
+    void sweepAfterAGapLongerThanTheWindowIsUnbounded() {
+        finishedRunStartedDaysAgo(45);
+        Long old = bookedDaysAgo(90);
+        
+        cleanupScheduler.markPastAppointmentsAsNoShow();
+        
+        assertThat(status(old)).isEqualTo("NO_SHOW");
+    }
+    
+    @Nested
+    @TestPropertySource(properties = "clinic.scheduler.cluster.enabled=false")
+    class Local {
+        
+        @Test
+        void sweepAfterARestartStaysInTheWindow() {
+            finishedRunStartedDaysAgo(1);
+            Long old = bookedDaysAgo(90);
+            Long recent = bookedDaysAgo(2);
+            
+            cleanupScheduler.markPastAppointmentsAsNoShow();
+            
+            assertThat(status(old)).isEqualTo("SCHEDULED");
+            assertThat(status(recent)).isEqualTo("NO_SHOW");
+        }
+        
+        @Test
+        void sweepIsRecordedForTheNextOne() {
+            Long old = bookedDaysAgo(90);
+            cleanupScheduler.markPastAppointmentsAsNoShow();
+            assertThat(status(old)).isEqualTo("NO_SHOW");
+            
+            Long older = bookedDaysAgo(120);
+            cleanupScheduler.markPastAppointmentsAsNoShow();
+            assertThat(status(older)).isEqualTo("SCHEDULED");
+            assertThat(jdbcTemplate.queryForObject("SELECT status FROM scheduler_jobs WHERE job = ?", String.class, JOB))
+                .isEqualTo("DONE");
+        }
+    }
+    
+    private void finishedRunStartedDaysAgo(int days) {
+        LocalDateTime startedAt = LocalDateTime.now().minusDays(days);
+        jdbcTemplate.update("INSERT INTO scheduler_jobs (job, run_at, status, started_by, started_at, completed_at) " +
+            "VALUES (?, ?, 'DONE', 'test', ?, ?)", JOB, startedAt, startedAt, startedAt.plusMinutes(1));
+    }
+    
+    private Long bookedDaysAgo(int days) {
+        return jdbcTemplate.queryForObject("INSERT INTO appointments (user_id, patient_name, appointment_date, doctor_id) " +
+            "VALUES (?, 'No Show', ?, ?) RETURNING id", Long.class, userId, LocalDateTime.now().minusDays(days), doctorId);
+    }
+    
+    private String status(Long id) {
+        return jdbcTemplate.queryForObject("SELECT status FROM appointments WHERE id = ?", String.class, id);
+    }
+}
@@ -0,0 +1,111 @@
+package com.clinic.appointment.scheduler;
+
+import com.clinic.appointment.PostgresIntegrationTest;
+import com.clinic.appointment.dto.AppointmentDTO;
+import com.clinic.appointment.dto.UserDTO;
+import com.clinic.appointment.repository.AppointmentRepository;
+import com.clinic.appointment.schedule.DoctorScheduleIndex;
+import com.clinic.appointment.service.AppointmentService;
+import com.clinic.appointment.service.AppointmentSyncService;
+import com.clinic.appointment.service.UserService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Changes made behind this node's back, as another node or a cascade would, reach the
+ * schedule index through the change log. The scheduled refresher is off in tests; this
+ * one is driven by hand until it has read past each change.
+ */
+class ScheduleIndexRefresherTest extends PostgresIntegrationTest {
+    
+    private static final Duration CATCH_UP_TIMEOUT = Duration.ofSeconds(30);
+    
+    @Autowired
+    private AppointmentSyncService syncService;
+    
+    @Autowired
+    private AppointmentRepository appointmentRepository;
+    
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+    
+    @Autowired
+    private DoctorScheduleIndex scheduleIndex;
+    
+    @Autowired
+    private AppointmentService appointmentService;
+    
+    @Autowired
+    private UserService userService;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    private ScheduleIndexRefresher refresher;
+    
+    @BeforeEach
+    void startRefresher() {
+        refresher = new ScheduleIndexRefresher(syncService, appointmentRepository, scheduleIndex, transactionManager,
+            new SimpleMeterRegistry(), true);
+        refresher.start();
+    }
+    
+    @Test
+    void appliesChangesCommittedElsewhere() throws InterruptedException {
+        String run = Long.toString(System.nanoTime(), 36);
+        Long userId = userService.createUser(new UserDTO(null, "refresh-" + run, "refresh-" + run + "@clinic.test",
+            "refresh-password", "Refresh Patient", null, null, "USER", true)).getId();
+        LocalDateTime start = LocalDate.now().plusDays(5).atTime(9, 0);
+        
+        AppointmentDTO booking = new AppointmentDTO();
+        booking.setUserId(userId);
+        booking.setPatientName("Refresh Patient");
+        booking.setAppointmentDate(start);
+        booking.setDoctorName("Dr Refresh " + run);
+        AppointmentDTO booked = appointmentService.createAppointment(booking);
+        Integer doctorId = jdbcTemplate.queryForObject(
+            "SELECT doctor_id FROM appointments WHERE id = ?", Integer.class, booked.getId());
+        assertThat(scheduleIndex.isFree(doctorId, start, start.plusMinutes(30), null)).isFalse();
+        
+        // Cancelled on another node: only the change log tells this one
+        changeElsewhere("UPDATE appointments SET status = 'CANCELLED' WHERE id = ?", booked.getId());
+        assertThat(scheduleIndex.isFree(doctorId, start, start.plusMinutes(30), null)).isTrue();
+        
+        // Booked on another node
+        LocalDateTime later = start.plusHours(2);
+        changeElsewhere("INSERT INTO appointments (user_id, patient_name, appointment_date, duration_minutes, doctor_id) " +
+            "VALUES (?, 'Refresh Patient', ?, 60, ?)", userId, later, doctorId);
+        assertThat(scheduleIndex.isFree(doctorId, later.plusMinutes(30), later.plusMinutes(45), null)).isFalse();
+        
+        // Removed by the cascade of a user delete
+        changeElsewhere("DELETE FROM users WHERE id = ?", userId);
+        assertThat(scheduleIndex.isFree(doctorId, later, later.plusMinutes(60), null)).isTrue();
+    }
+    
+    /**
+     * Commits the statement in a transaction of its own, then refreshes until the refresher
+     * has read past that transaction. The change log only hands out changes of transactions
+     * older than every one still running, so a single refresh may not see it yet.
+     */
+    private void changeElsewhere(String sql, Object... args) throws InterruptedException {
+        Long writerXid = jdbcTemplate.queryForObject(
+            "WITH changed AS (" + sql + " RETURNING 1) SELECT pg_current_xact_id()::text::bigint", Long.class, args);
+        long deadline = System.nanoTime() + CATCH_UP_TIMEOUT.toNanos();
+        refresher.refresh();
+        while (refresher.position().xid() <= writerXid) {
+            assertThat(System.nanoTime()).as("refresh past xid %d", writerXid).isLessThan(deadline);
+            Thread.sleep(20);
+            refresher.refresh();
+        }
+    }
+}
@@ -0,0 +1,252 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.PostgresIntegrationTest;
+import com.clinic.appointment.dto.AppointmentDTO;
+import com.clinic.appointment.dto.UserDTO;
+import com.clinic.appointment.exception.SlotUnavailableException;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.dao.PessimisticLockingFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntConsumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Thousands of parallel bookings for a few doctors' slots: every slot must be booked
+ * exactly once and every other attempt refused as a conflict, both through
+ * AppointmentService and with the in-memory index bypassed, as when the competing
+ * bookings come from other nodes. Moves and cancellations racing each other must
+ * leave the same guarantee behind.
+ */
+class AppointmentBookingConcurrencyTest extends PostgresIntegrationTest {
+    
+    private static final int DOCTORS = 4;
+    // Half-hour slots filling clinic hours, 08:00 to 20:00
+    private static final int SLOTS_PER_DOCTOR = 24;
+    private static final int ATTEMPTS_PER_SLOT = 40;
+    private static final int THREADS = 64;
+    // No more than the connection pool: deadlocked inserts hold their connection for a second
+    private static final int RAW_INSERT_THREADS = 8;
+    
+    @Autowired
+    private AppointmentService appointmentService;
+    
+    @Autowired
+    private UserService userService;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Test
+    void everySlotIsBookedExactlyOnce() throws InterruptedException {
+        String run = runId();
+        Long userId = createUser(run);
+        LocalDateTime firstSlot = LocalDate.now().plusDays(3).atTime(8, 0);
+        
+        List<AppointmentDTO> attempts = new ArrayList<>();
+        for (int doctor = 0; doctor < DOCTORS; doctor++) {
+            for (int slot = 0; slot < SLOTS_PER_DOCTOR; slot++) {
+                for (int attempt = 0; attempt < ATTEMPTS_PER_SLOT; attempt++) {
+                    attempts.add(appointment(userId, "Dr Stress " + run + " " + doctor, firstSlot.plusMinutes(30L * slot)));
+                }
+            }
+        }
+        Collections.shuffle(attempts);
+        
+        Map<String, AtomicInteger> booked = new ConcurrentHashMap<>();
+        AtomicInteger conflicts = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        runConcurrently(attempts.size(), THREADS, i -> {
+            AppointmentDTO attempt = attempts.get(i);
+            try {
+                appointmentService.createAppointment(attempt);
+                booked.computeIfAbsent(attempt.getDoctorName() + "@" + attempt.getAppointmentDate(),
+                    key -> new AtomicInteger()).incrementAndGet();
+            } catch (SlotUnavailableException e) {
+                conflicts.incrementAndGet();
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        
+        int slots = DOCTORS * SLOTS_PER_DOCTOR;
+        assertThat(failures).isEmpty();
+        assertThat(booked).hasSize(slots);
+        assertThat(booked.values()).allSatisfy(count -> assertThat(count.get()).isEqualTo(1));
+        assertThat(conflicts.get()).isEqualTo(attempts.size() - slots);
+        assertThat(activeBookings(run)).isEqualTo(slots);
+        assertThat(overlappingPairs(run)).isZero();
+    }
+    
+    @Test
+    void overlappingInsertsFromOtherNodesAreRejectedByTheDatabase() throws InterruptedException {
+        String run = runId();
+        Long userId = createUser(run);
+        Integer doctorId = jdbcTemplate.queryForObject(
+            "INSERT INTO doctors (name) VALUES (?) RETURNING id", Integer.class, "Dr Stress " + run);
+        LocalDateTime firstStart = LocalDate.now().plusDays(4).atTime(8, 0);
+        
+        // 30-minute visits starting every 10 minutes, each start tried several times, so
+        // most of them overlap a neighbour
+        int starts = 30;
+        int attemptsPerStart = 10;
+        AtomicInteger inserted = new AtomicInteger();
+        AtomicInteger rejected = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        runConcurrently(starts * attemptsPerStart, RAW_INSERT_THREADS, i -> {
+            try {
+                jdbcTemplate.update("INSERT INTO appointments (user_id, patient_name, appointment_date, " +
+                    "duration_minutes, doctor_id) VALUES (?, ?, ?, 30, ?)",
+                    userId, "Stress", firstStart.plusMinutes(10L * (i % starts)), doctorId);
+                inserted.incrementAndGet();
+            } catch (DataIntegrityViolationException | PessimisticLockingFailureException e) {
+                // A violation of the exclusion constraint, or a deadlock between two overlapping inserts
+                rejected.incrementAndGet();
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        
+        assertThat(failures).isEmpty();
+        assertThat(inserted.get()).isPositive().isLessThanOrEqualTo(starts / 3 + 1);
+        assertThat(inserted.get() + rejected.get()).isEqualTo(starts * attemptsPerStart);
+        assertThat(activeBookings(run)).isEqualTo(inserted.get());
+        assertThat(overlappingPairs(run)).isZero();
+    }
+    
+    @Test
+    void concurrentMovesAndCancellationsKeepEverySlotSingleBooked() throws InterruptedException {
+        String run = runId();
+        Long userId = createUser(run);
+        String from = "Dr Stress " + run + " from";
+        String to = "Dr Stress " + run + " to";
+        LocalDateTime firstSlot = LocalDate.now().plusDays(5).atTime(8, 0);
+        List<Long> ids = new ArrayList<>();
+        for (int slot = 0; slot < SLOTS_PER_DOCTOR; slot++) {
+            ids.add(appointmentService.createAppointment(appointment(userId, from, firstSlot.plusMinutes(30L * slot))).getId());
+        }
+        
+        // Every appointment is moved to several of the other doctor's slots at once, each slot
+        // is contended by several appointments, and some appointments are cancelled meanwhile
+        int movesPerAppointment = 8;
+        AtomicInteger moved = new AtomicInteger();
+        ConcurrentLinkedQueue<Throwable> failures = new ConcurrentLinkedQueue<>();
+        runConcurrently(ids.size() * movesPerAppointment, THREADS, i -> {
+            Long id = ids.get(i % ids.size());
+            int move = i / ids.size();
+            try {
+                if (move == movesPerAppointment - 1 && id % 5 == 0) {
+                    appointmentService.cancelAppointment(id);
+                } else {
+                    AppointmentDTO change = new AppointmentDTO();
+                    change.setDoctorName(to);
+                    change.setAppointmentDate(firstSlot.plusMinutes(30L * ((i + move) % SLOTS_PER_DOCTOR)));
+                    appointmentService.updateAppointment(id, change);
+                    moved.incrementAndGet();
+                }
+            } catch (SlotUnavailableException e) {
+                // Another appointment holds that slot
+            } catch (Throwable e) {
+                failures.add(e);
+            }
+        });
+        
+        assertThat(failures).isEmpty();
+        assertThat(moved.get()).isPositive();
+        assertThat(overlappingPairs(run)).isZero();
+        
+        // The in-memory schedule agrees with the table: exactly the slots left free can be booked
+        for (int slot = 0; slot < SLOTS_PER_DOCTOR; slot++) {
+            LocalDateTime start = firstSlot.plusMinutes(30L * slot);
+            boolean taken = jdbcTemplate.queryForObject(
+                "SELECT count(*) FROM appointments a JOIN doctors d ON d.id = a.doctor_id " +
+                "WHERE d.name = ? AND a.appointment_date = ? AND a.status IN ('SCHEDULED', 'CONFIRMED')",
+                Integer.class, to, start) > 0;
+            boolean booked;
+            try {
+                appointmentService.createAppointment(appointment(userId, to, start));
+                booked = true;
+            } catch (SlotUnavailableException e) {
+                booked = false;
+            }
+            assertThat(booked).as("slot %s", start).isEqualTo(!taken);
+        }
+        assertThat(overlappingPairs(run)).isZero();
+    }
+    
+    private void runConcurrently(int tasks, int threads, IntConsumer task) throws InterruptedException {
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            for (int i = 0; i < tasks; i++) {
+                int index = i;
+                executor.execute(() -> {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    task.accept(index);
+                });
+            }
+            start.countDown();
+        } finally {
+            executor.shutdown();
+        }
+        assertThat(executor.awaitTermination(5, TimeUnit.MINUTES)).isTrue();
+    }
+    
+    private int activeBookings(String run) {
+        return jdbcTemplate.queryForObject(
+            "SELECT count(*) FROM appointments a JOIN doctors d ON d.id = a.doctor_id " +
+            "WHERE d.name LIKE ? AND a.status IN ('SCHEDULED', 'CONFIRMED')",
+            Integer.class, "Dr Stress " + run + "%");
+    }
+    
+    private int overlappingPairs(String run) {
+        return jdbcTemplate.queryForObject(
+            "SELECT count(*) FROM appointments a JOIN appointments b ON a.doctor_id = b.doctor_id AND a.id < b.id " +
+            "AND a.appointment_date < b.appointment_date + make_interval(mins => b.duration_minutes) " +
+            "AND b.appointment_date < a.appointment_date + make_interval(mins => a.duration_minutes) " +
+            "JOIN doctors d ON d.id = a.doctor_id " +
+            "WHERE d.name LIKE ? AND a.status IN ('SCHEDULED', 'CONFIRMED') AND b.status IN ('SCHEDULED', 'CONFIRMED')",
+            Integer.class, "Dr Stress " + run + "%");
+    }
+    
+    private Long createUser(String run) {
+        UserDTO user = new UserDTO(null, "stress-" + run, "stress-" + run + "@clinic.test", "stress-password",
+            "Stress Patient", null, null, "USER", true);
+        return userService.createUser(user).getId();
+    }
+    
+    private static AppointmentDTO appointment(Long userId, String doctorName, LocalDateTime start) {
+        AppointmentDTO dto = new AppointmentDTO();
+        dto.setUserId(userId);
+        dto.setPatientName("Stress Patient");
+        dto.setAppointmentDate(start);
+        dto.setDoctorName(doctorName);
+        dto.setDepartment("Stress");
+        return dto;
+    }
+    
+    private static String runId() {
+        return Long.toString(System.nanoTime(), 36);
+    }
+}
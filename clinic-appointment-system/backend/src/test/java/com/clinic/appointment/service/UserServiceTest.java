@@ -0,0 +1,126 @@
+package com.clinic.appointment.service;
+
+import com.clinic.appointment.PostgresIntegrationTest;
+import com.clinic.appointment.dto.UserDTO;
+import com.clinic.appointment.dto.UserUpdateDTO;
+import com.clinic.appointment.repository.UserRepository;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Profile edits and login rehashes keep changes made concurrently, and unknown usernames
+ * cost a login as much as known ones
+ */
+class UserServiceTest extends PostgresIntegrationTest {
+    
+    @Autowired
+    private UserService userService;
+    
+    @Autowired
+    private UserRepository userRepository;
+    
+    @Autowired
+    private JdbcTemplate jdbcTemplate;
+    
+    @Autowired
+    private MeterRegistry meterRegistry;
+    
+    @Test
+    void concurrentEditsOfDifferentFieldsAreAllKept() {
+        Long id = createUser().getId();
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            List<CompletableFuture<?>> updates = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                String suffix = Integer.toString(i);
+                updates.add(CompletableFuture.runAsync(() -> userService.updateUser(id, update(u -> u.setFullName("Name " + suffix))), executor));
+                updates.add(CompletableFuture.runAsync(() -> userService.updateUser(id, update(u -> u.setAddress("Street " + suffix))), executor));
+            }
+            CompletableFuture.allOf(updates.toArray(CompletableFuture[]::new)).join();
+        } finally {
+            executor.shutdown();
+        }
+        userService.updateUser(id, update(u -> u.setFullName("Final name")));
+        userService.updateUser(id, update(u -> u.setAddress("Final street")));
+        
+        UserDTO user = userRepository.findDtoById(id).orElseThrow();
+        assertThat(user.getFullName()).isEqualTo("Final name");
+        assertThat(user.getAddress()).isEqualTo("Final street");
+    }
+    
+    @Test
+    void profileEditKeepsAPasswordChangedMeanwhile() {
+        UserDTO created = createUser();
+        String changedHash = new BCryptPasswordEncoder(4).encode("changed-elsewhere");
+        jdbcTemplate.update("UPDATE users SET password = ? WHERE id = ?", changedHash, created.getId());
+        
+        userService.updateUser(created.getId(), update(u -> u.setFullName("Renamed")));
+        
+        assertThat(userRepository.findById(created.getId()).orElseThrow().getPassword()).isEqualTo(changedHash);
+    }
+    
+    @Test
+    void loginRehashesAWeakHash() {
+        UserDTO created = createUser();
+        jdbcTemplate.update("UPDATE users SET password = ? WHERE id = ?",
+            new BCryptPasswordEncoder(4).encode("user-password"), created.getId());
+        
+        assertThat(userService.authenticate(created.getUsername(), "user-password")).isPresent();
+        
+        String rehashed = userRepository.findById(created.getId()).orElseThrow().getPassword();
+        assertThat(rehashed).doesNotStartWith("$2a$04$");
+        assertThat(userService.authenticate(created.getUsername(), "user-password")).isPresent();
+    }
+    
+    @Test
+    void rehashDoesNotReplaceAPasswordChangedMeanwhile() {
+        UserDTO created = createUser();
+        String staleHash = userRepository.findById(created.getId()).orElseThrow().getPassword();
+        String changedHash = new BCryptPasswordEncoder(4).encode("changed-elsewhere");
+        jdbcTemplate.update("UPDATE users SET password = ? WHERE id = ?", changedHash, created.getId());
+        
+        int replaced = userRepository.replacePassword(created.getId(), staleHash,
+            new BCryptPasswordEncoder(4).encode("user-password"), LocalDateTime.now());
+        
+        assertThat(replaced).isZero();
+        assertThat(userRepository.findById(created.getId()).orElseThrow().getPassword()).isEqualTo(changedHash);
+    }
+    
+    @Test
+    void unknownUsernameCostsABcryptCheck() {
+        long before = matchCount();
+        
+        assertThat(userService.authenticate("nobody-" + System.nanoTime(), "whatever")).isEmpty();
+        
+        assertThat(matchCount()).isEqualTo(before + 1);
+    }
+    
+    private long matchCount() {
+        return meterRegistry.get("clinic.password.hashing").tag("operation", "match").timer().count();
+    }
+    
+    private UserDTO createUser() {
+        String run = Long.toString(System.nanoTime(), 36);
+        return userService.createUser(new UserDTO(null, "user-" + run, "user-" + run + "@clinic.test", "user-password",
+            "Test User", null, null, "USER", true));
+    }
+    
+    private static UserUpdateDTO update(Consumer<UserUpdateDTO> change) {
+        UserUpdateDTO update = new UserUpdateDTO();
+        change.accept(update);
+        return update;
+    }
+}
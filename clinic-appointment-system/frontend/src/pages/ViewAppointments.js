@@ -1,4 +1,4 @@
-import React, { useState, useEffect } from 'react';
+import React, { useState, useEffect, useRef } from 'react';
 import { useUser } from '../context/UserContext';
 import { appointmentService } from '../services/appointmentService';
 import { validation } from '../utils/validation';
@@ -10,18 +10,37 @@ import '../styles/animations.css';
 const ViewAppointments = () => {
   const { user } = useUser();
   const [appointments, setAppointments] = useState([]);
+  const [nextCursor, setNextCursor] = useState(null);
   const [loading, setLoading] = useState(true);
+  const [loadingMore, setLoadingMore] = useState(false);
   const [error, setError] = useState('');
+  // How many appointments are on screen, so a reload brings back as many pages as were loaded
+  const shownCount = useRef(0);
 
   useEffect(() => {
+    shownCount.current = 0;
     fetchAppointments();
+    // Reload when one of this user's appointments changes, instead of polling
+    const changes = appointmentService.subscribeToChanges({ userId: user.id }, () => fetchAppointments());
+    return () => changes.close();
     // eslint-disable-next-line react-hooks/exhaustive-deps
   }, [user]);
 
+  const showPage = (content, cursor) => {
+    shownCount.current = content.length;
+    setAppointments(content);
+    setNextCursor(cursor);
+  };
+
   const fetchAppointments = async () => {
     try {
-      const data = await appointmentService.getUserAppointments(user.id);
-      setAppointments(data);
+      let page = await appointmentService.getUserAppointments(user.id);
+      let content = page.content;
+      while (page.hasMore && content.length < shownCount.current) {
+        page = await appointmentService.getUserAppointments(user.id, page.nextCursor);
+        content = content.concat(page.content);
+      }
+      showPage(content, page.hasMore ? page.nextCursor : null);
     } catch (err) {
       setError('Failed to load appointments');
     } finally {
@@ -29,6 +48,18 @@ const ViewAppointments = () => {
     }
   };
 
+  const loadMore = async () => {
+    setLoadingMore(true);
+    try {
+      const page = await appointmentService.getUserAppointments(user.id, nextCursor);
+      showPage(appointments.concat(page.content), page.hasMore ? page.nextCursor : null);
+    } catch (err) {
+      alert('Failed to load more appointments');
+    } finally {
+      setLoadingMore(false);
+    }
+  };
+
   const handleCancel = async (id) => {
     if (!window.confirm('Are you sure you want to cancel this appointment?')) {
       return;
@@ -160,6 +191,14 @@ const ViewAppointments = () => {
                     </div>
                   </div>
                 ))}
+
+                {nextCursor && (
+                  <div className="flex justify-center pt-4">
+                    <AnimatedButton onClick={loadMore} disabled={loadingMore}>
+                      {loadingMore ? 'Loading...' : 'Load more'}
+                    </AnimatedButton>
+                  </div>
+                )}
               </div>
             )}
           </GlassCard>
@@ -11,18 +11,44 @@ export const appointmentService = {
     return response.data;
   },
 
-  getAllAppointments: async () => {
-    const response = await api.get('/appointments');
+  // List endpoints return { content, nextCursor, hasMore }; pass nextCursor back to load the next page
+  searchAppointments: async (filters = {}, cursor) => {
+    const response = await api.get('/appointments', { params: { ...filters, cursor } });
     return response.data;
   },
 
-  getUserAppointments: async (userId) => {
-    const response = await api.get(`/appointments/user/${userId}`);
+  // Revalidated by the browser with If-None-Match; an unchanged list comes back as a 304 served from its cache
+  getUserAppointments: async (userId, cursor) => {
+    const response = await api.get(`/appointments/user/${userId}`, { params: { cursor } });
     return response.data;
   },
 
-  getAppointmentsByStatus: async (status) => {
-    const response = await api.get(`/appointments/status/${status}`);
+  getAppointmentsByStatus: async (status, cursor) => {
+    const response = await api.get(`/appointments/status/${status}`, { params: { cursor } });
+    return response.data;
+  },
+
+  getAvailability: async ({ doctor, department, from, to, duration }) => {
+    const response = await api.get('/availability', { params: { doctor, department, from, to, duration } });
+    return response.data;
+  },
+
+  // Calls onChange with each committed change ({ type, appointmentId, userId, doctorId, appointmentDate, status })
+  // to appointments matching { userId, doctor }; the browser reconnects on its own. Call close() on the result to stop.
+  subscribeToChanges: ({ userId, doctor } = {}, onChange) => {
+    const params = new URLSearchParams();
+    if (userId) params.set('userId', userId);
+    if (doctor) params.set('doctor', doctor);
+    // EventSource cannot send the Authorization header
+    params.set('access_token', localStorage.getItem('token') || '');
+    const source = new EventSource(`${api.defaults.baseURL}/appointments/stream?${params}`);
+    source.addEventListener('appointment', (event) => onChange(JSON.parse(event.data)));
+    return source;
+  },
+
+  // Returns { changes, nextToken, hasMore }; without since, only a token to sync from later (410 once it has expired)
+  getChanges: async ({ since, userId, doctor, size } = {}) => {
+    const response = await api.get('/appointments/changes', { params: { since, userId, doctor, size } });
     return response.data;
   },
 
@@ -8,6 +8,9 @@ export const userService = {
 
   login: async (credentials) => {
     const response = await api.post('/users/login', credentials);
+    if (response.data.token) {
+      localStorage.setItem('token', response.data.token);
+    }
     if (response.data.user) {
       localStorage.setItem('user', JSON.stringify(response.data.user));
     }